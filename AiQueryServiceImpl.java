@@ -1,6 +1,27 @@
 package com.ws16289.daxi.service.impl.ai;
 
+import com.ws16289.daxi.repository.OpenSearchStoreRepository;
+import com.ws16289.daxi.repository.impl.OpenSearchStoreRepositoryImpl;
+import com.ws16289.daxi.repository.impl.VectorStoreWriteEvent;
 import com.ws16289.daxi.service.ai.IAiQueryService;
+import com.ws16289.daxi.service.impl.ai.rag.AdaptiveCutoffRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.ContextPacker;
+import com.ws16289.daxi.service.impl.ai.rag.FederatedDocumentRetriever;
+import com.ws16289.daxi.service.impl.ai.rag.MmrDocumentPostProcessorFactory;
+import com.ws16289.daxi.service.impl.ai.rag.OpenSearchAsyncRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.OpenSearchHybridRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.ParallelDocumentRetrieval;
+import com.ws16289.daxi.service.impl.ai.rag.QueryTransformationCache;
+import com.ws16289.daxi.service.impl.ai.rag.RagDeadline;
+import com.ws16289.daxi.service.impl.ai.rag.RagPipelineMetrics;
+import com.ws16289.daxi.service.impl.ai.rag.RagRequestCoalescer;
+import com.ws16289.daxi.service.impl.ai.rag.RagStageGuard;
+import com.ws16289.daxi.service.impl.ai.rag.RetrievalOutcome;
+import com.ws16289.daxi.service.impl.ai.rag.SemanticAnswerCache;
+import com.ws16289.daxi.service.impl.ai.rag.StreamCoalescer;
+import com.ws16289.daxi.util.DocumentValidity;
+import com.ws16289.daxi.util.IndexNames;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
@@ -12,27 +33,34 @@ import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
 import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
 import org.springframework.ai.rag.preretrieval.query.expansion.MultiQueryExpander;
+import org.springframework.ai.rag.preretrieval.query.expansion.QueryExpander;
 import org.springframework.ai.rag.preretrieval.query.transformation.CompressionQueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
-import org.springframework.ai.rag.retrieval.join.ConcatenationDocumentJoiner;
 import org.springframework.ai.rag.retrieval.join.DocumentJoiner;
 import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.ai.rag.generation.augmentation.QueryAugmenter;
 import org.springframework.ai.vectorstore.filter.Filter;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -56,19 +84,82 @@ public class AiQueryServiceImpl implements  IAiQueryService{
     @Autowired
     private QueryAugmenter queryAugmenter;
 
+    @Autowired
+    private Scheduler ragPipelineScheduler;
+
+    @Autowired
+    private ParallelDocumentRetrieval parallelDocumentRetrieval;
+
+    @Autowired
+    private QueryTransformationCache queryTransformationCache;
+
+    @Autowired
+    private DocumentJoiner ragDocumentJoiner;
+
+    @Autowired
+    private ContextPacker contextPacker;
+
+    @Autowired
+    private OpenSearchHybridRetrieverFactory hybridRetrieverFactory;
+
+    @Autowired
+    private RagRequestCoalescer requestCoalescer;
+
+    @Autowired
+    private RagPipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private OpenSearchStoreRepository openSearchStoreRepository;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private RagStageGuard stageGuard;
+
+    @Autowired
+    private MmrDocumentPostProcessorFactory mmrPostProcessorFactory;
+
+    @Autowired
+    private StreamCoalescer streamCoalescer;
+
+    @Autowired
+    private AdaptiveCutoffRetrieverFactory adaptiveCutoffFactory;
+
+    @Autowired
+    private OpenSearchAsyncRetrieverFactory asyncRetrieverFactory;
+
+    @Autowired
+    @Qualifier("ragRetrievalExecutor")
+    private ExecutorService retrievalExecutor;
+
+    // 带缓存的查询转换器，相同查询不重复调用 LLM
+    private QueryTransformer cachedRewriteTransformer;
+    private QueryTransformer cachedCompressionTransformer;
+    private QueryExpander cachedMultiQueryExpander;
+
     @Value("${embedding.retrieval.top-k:3}")
     private int defaultTopK;
 
     @Value("${embedding.retrieval.similarity-threshold:0.2}")
     private double defaultSimilarityThreshold;
 
+    // 检索模式：vector（纯向量检索）/ hybrid（BM25 + kNN 混合检索）
+    @Value("${embedding.retrieval.mode:vector}")
+    private String retrievalMode;
+
     @Value("${embedding.retrieval.filter.category:}")
     private String defaultCategory;
 
     @Value("${embedding.retrieval.filter.is-active:}")
     private Boolean defaultIsActive;
 
-    // VectorStore 缓存，避免重复获取
+    // 按生效时间窗口过滤，过期或未生效的文档片段不进入 kNN 候选集；
+    // 没有 valid_from_ts / valid_end_ts 字段的文档（该字段加入前写入的）会被一并过滤，需重新导入后再开启
+    @Value("${embedding.retrieval.filter.validity-window:false}")
+    private boolean filterByValidityWindow;
+
+    // VectorStore 缓存，避免重复获取；索引写入、删除或重建后失效，重新获取时拿到新的实例会触发 Advisor 重建
     private final Map<String, VectorStore> vectorStoreCache = new java.util.concurrent.ConcurrentHashMap<>();
 
     @Value("${embedding.retrieval.enable-trans:false}")
@@ -82,95 +173,184 @@ public class AiQueryServiceImpl implements  IAiQueryService{
     @Value("${embedding.retrieval.filter.enable-postprocessor:false}")
     private Boolean enablePostProcessors;
 
-    public Flux<String> advanceRag(ChatClient chatClient, String vectorStoreName, String query, String memoryId ){
+    // 联邦检索：单个索引的检索超时和合并后的全局 topK，多个索引的排名按 RRF 融合
+    @Value("${embedding.retrieval.federated.index-timeout:3s}")
+    private Duration federatedIndexTimeout;
+    @Value("${embedding.retrieval.federated.top-k:5}")
+    private int federatedTopK;
+    @Value("${embedding.retrieval.join.rrf-k:60}")
+    private int federatedRankConstant;
+
+    // 单个请求从开始到开始生成回答的总预算，各阶段超时不超过剩余预算
+    @Value("${embedding.retrieval.pipeline.deadline:20s}")
+    private Duration pipelineDeadline;
+
+    // 流水线各阶段超时
+    @Value("${embedding.retrieval.pipeline.timeout.rewrite:10s}")
+    private Duration rewriteTimeout;
+    @Value("${embedding.retrieval.pipeline.timeout.compression:10s}")
+    private Duration compressionTimeout;
+    @Value("${embedding.retrieval.pipeline.timeout.expansion:15s}")
+    private Duration expansionTimeout;
+    @Value("${embedding.retrieval.pipeline.timeout.augmentation:2s}")
+    private Duration augmentationTimeout;
+    @Value("${embedding.retrieval.pipeline.timeout.retrieval:5s}")
+    private Duration retrievalTimeout;
+
+    // 预构建的 RAG Advisor，按 (vectorStoreName, 流水线变体) 缓存，避免每个请求重复创建
+    private final Map<String, CachedAdvisor> advisorCache = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private record CachedAdvisor(VectorStore vectorStore, BaseAdvisor advisor) {
+    }
 
+    // advanceRag 专用组件，启动时创建一次
+    private QueryExpander advanceRagQueryExpander;
+    private QueryAugmenter advanceRagQueryAugmenter;
+
+    @PostConstruct
+    public void init() {
+        cachedRewriteTransformer = queryTransformationCache.wrapTransformer("rewrite", rewriteQueryTransformer);
+        cachedCompressionTransformer = queryTransformationCache.wrapTransformer("compression", compressionQueryTransformer);
+        cachedMultiQueryExpander = queryTransformationCache.wrapExpander("multi-query", multiQueryExpander);
+
+        advanceRagQueryExpander = queryTransformationCache.wrapExpander("multi-query-3", MultiQueryExpander.builder()
+                .chatClientBuilder(ChatClient.builder(chatModel))
+                .numberOfQueries(3)
+                .includeOriginal(true)
+                .build());
+        advanceRagQueryAugmenter = ContextualQueryAugmenter.builder().promptTemplate(
+                new PromptTemplate("""
+                    以下为相关背景信息。
+                    ---------------------
+                    {context}
+                    ---------------------
+                    
+                    根据提供的背景信息且没有先入为主的观念，回答问题。
+                    请遵循以下规则：
+                    1. 如果答案不在所提供的信息中，那就直接说你不知道。
+                    2. 避免使用诸如“根据上下文……”或“所提供的信息……”这样的表述。
+                    查询：{query}
+                    回答：
+                    """))
+                .allowEmptyContext(true)
+                .build();
+    }
+
+    public Flux<String> advanceRag(ChatClient chatClient, String vectorStoreName, String query, String memoryId ){
+        long start = System.nanoTime();
         if(! this.isVectorStoreValid(vectorStoreName)) {
             return Flux.empty();
         }
         if(!enableTransFormer && !enableDocRetriever && !enableQueryAugmenter & !enablePostProcessors){
-            return chat(chatClient,query,memoryId,null);
+            return respond(chat(chatClient,query,memoryId,null), vectorStoreName, "plain", start);
         }
         VectorStore vectorStore = getVectorStore(vectorStoreName);
+        BaseAdvisor advisor = getOrBuildAdvisor(vectorStoreName, advanceRagVariant(), vectorStore,
+                () -> buildAdvanceRagAdvisor(vectorStoreName, vectorStore));
+
+        // 重排序
+//        RetrievalRerankAdvisor retrievalRerankAdvisor = new RetrievalRerankAdvisor(
+//                vectorStore,
+//                dashScopeRerankModel,
+//                SearchRequest.builder()
+//                        .topK(defaultTopK)// 第一阶段检索 defaultTopK 个候选文档,第二阶段会根据topn筛选
+//                        .build()
+//        );
+
+        return respond(
+                cachedWithDeadline(chatClient, vectorStoreName, advanceRagVariant(), query, memoryId,
+                        deadline -> chat(chatClient, query, memoryId, advisor, deadline)),
+                vectorStoreName, advanceRagVariant(), start);
+
+    }
+
+    /**
+     * advanceRag 的流水线变体，由各开关组合决定
+     */
+    private String advanceRagVariant() {
+        return "advance:" + (enableTransFormer ? "T" : "-") + (enableQueryExpander ? "E" : "-")
+                + (enableDocRetriever ? "R" : "-") + (enableQueryAugmenter ? "A" : "-")
+                + (enablePostProcessors ? "P" : "-");
+    }
+
+    /**
+     * 按开关构建 advanceRag 使用的 RetrievalAugmentationAdvisor，只在流水线首次使用或索引变化时调用
+     */
+    private BaseAdvisor buildAdvanceRagAdvisor(String vectorStoreName, VectorStore vectorStore) {
+        String variant = advanceRagVariant();
         var retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder();
         if(enableTransFormer){
-            retrievalAugmentationAdvisor.queryTransformers(RewriteQueryTransformer.builder()
-                            .chatClientBuilder(ChatClient.builder(chatModel).build().mutate())
-                            .build())
-                    .queryTransformers(CompressionQueryTransformer.builder()
-                            .chatClientBuilder(ChatClient.builder(chatModel).build().mutate())
-                            .build());
+            retrievalAugmentationAdvisor.queryTransformers(
+                    stageGuard.guard("rewrite", vectorStoreName, variant, rewriteTimeout, cachedRewriteTransformer),
+                    stageGuard.guard("compression", vectorStoreName, variant, compressionTimeout, cachedCompressionTransformer));
         }
         if(enableQueryExpander){
-            retrievalAugmentationAdvisor.queryExpander(MultiQueryExpander.builder()
-                    .chatClientBuilder(ChatClient.builder(chatModel).build().mutate())
-                    .numberOfQueries(3)
-                    .includeOriginal(true)
-                    .build());
+            retrievalAugmentationAdvisor.queryExpander(
+                    stageGuard.guard("expansion", vectorStoreName, variant, expansionTimeout, advanceRagQueryExpander));
         }
+        // 启用 MMR（embedding.retrieval.mmr.enabled）时检索阶段连同向量取回更大的候选集，由后处理器选出多样化的 topK
+        boolean useMmr = enablePostProcessors && mmrPostProcessorFactory.isEnabled();
+        int retrievalTopK = useMmr ? mmrPostProcessorFactory.candidateCount(defaultTopK) : defaultTopK;
         if(enableDocRetriever) {
             //负责从底层数据源（如搜索引擎、向量存储、数据库或知识图谱）中检索文档的组件。这个插件与QuestionAnswerAdvisor实现功能基本一致
-            retrievalAugmentationAdvisor.documentRetriever(VectorStoreDocumentRetriever.builder()
-                    .similarityThreshold(defaultSimilarityThreshold)
-                    .topK(defaultTopK)
-                    .vectorStore(vectorStore)
-                    .filterExpression(Objects.requireNonNull(buildFilterExpression(defaultCategory,defaultIsActive)))
-                    .build());
+            retrievalAugmentationAdvisor.documentRetriever(requestCoalescer.wrap(
+                    stageGuard.guard(vectorStoreName, variant, retrievalTimeout,
+                            createtDocumentRetriever(vectorStoreName, vectorStore, retrievalTopK, useMmr)),
+                    vectorStoreName, variant));
         }
         if(enableQueryExpander) {
             //用于将根据多个查询从多个数据源检索到的文档组合成一个单一文档集合的组件。在组合过程中，它还能处理重复文档以及互惠排序策略
-            retrievalAugmentationAdvisor.documentJoiner(new ConcatenationDocumentJoiner());
+            retrievalAugmentationAdvisor.documentJoiner(ragDocumentJoiner);
         }
         if(enablePostProcessors){
             //检索后文档rerank,监控
-            retrievalAugmentationAdvisor.documentPostProcessors((temp, documents) -> {
+            DocumentPostProcessor logging = (temp, documents) -> {
                 log.info("Original query: " + temp.text());
                 log.info("Retrieved documents: " + documents.size());
                 return documents;
-            });
+            };
+            if (useMmr) {
+                // MMR 去除内容重复的候选文档
+                DocumentPostProcessor mmr = mmrPostProcessorFactory.create(
+                        IndexNames.normalize(vectorStoreName), defaultTopK);
+                retrievalAugmentationAdvisor.documentPostProcessors(logging, (temp, documents) ->
+                        pipelineMetrics.timeStage("mmr", vectorStoreName, variant, () -> mmr.process(temp, documents)));
+            } else {
+                retrievalAugmentationAdvisor.documentPostProcessors(logging);
+            }
         }
-
-
         if(enableQueryAugmenter){
             //一种用于为输入查询添加额外数据的组件，有助于为大型语言模型提供必要的背景信息，从而能够回答用户的问题
-
-            retrievalAugmentationAdvisor.queryAugmenter(ContextualQueryAugmenter.builder().promptTemplate(
-                    new PromptTemplate("""
-                        以下为相关背景信息。
-                        ---------------------
-                        {context}
-                        ---------------------
-                        
-                        根据提供的背景信息且没有先入为主的观念，回答问题。
-                        请遵循以下规则：
-                        1. 如果答案不在所提供的信息中，那就直接说你不知道。
-                        2. 避免使用诸如“根据上下文……”或“所提供的信息……”这样的表述。
-                        查询：{query}
-                        回答：
-                        """))
-                    .allowEmptyContext(true)
-                    .build());
+            retrievalAugmentationAdvisor.queryAugmenter(advanceRagQueryAugmenter);
         }
-                BaseAdvisor advisor = retrievalAugmentationAdvisor.build();
-
-
-
-        // 重排序
-//        RetrievalRerankAdvisor retrievalRerankAdvisor = new RetrievalRerankAdvisor(
-//                vectorStore,
-//                dashScopeRerankModel,
-//                SearchRequest.builder()
-//                        .topK(defaultTopK)// 第一阶段检索 defaultTopK 个候选文档,第二阶段会根据topn筛选
-//                        .build()
-//        );
-
-        return chat(chatClient,query,memoryId,advisor);
+        BaseAdvisor advisor = retrievalAugmentationAdvisor.build();
+        log.info("advanceRag RetrievalAugmentationAdvisor 创建成功 - variant: {}", variant);
+        return advisor;
+    }
 
+    /**
+     * 获取预构建的 Advisor，不存在或 VectorStore 实例已变化（索引被删除重建）时重新构建
+     *
+     * @param vectorStoreName 索引名称
+     * @param variant 流水线变体
+     * @param vectorStore 当前的 VectorStore 实例
+     * @param builder Advisor 构建方法
+     * @return 可复用的 Advisor
+     */
+    private BaseAdvisor getOrBuildAdvisor(String vectorStoreName, String variant, VectorStore vectorStore,
+                                          Supplier<BaseAdvisor> builder) {
+        return advisorCache.compute(vectorStoreName + "|" + variant, (key, cached) ->
+                cached != null && cached.vectorStore() == vectorStore
+                        ? cached
+                        : new CachedAdvisor(vectorStore, builder.get())
+        ).advisor();
     }
 
     @Override
     public Flux<String> queryWithRewriteTransformer(ChatClient chatClient, String vectorStoreName, String query
             , String memoryId){
         log.info("开始查询 - VectorStoreName: {}, Query: {}", vectorStoreName, query);
+        long start = System.nanoTime();
 
         try {
 
@@ -178,14 +358,17 @@ public class AiQueryServiceImpl implements  IAiQueryService{
 
                 VectorStore vectorStore = getVectorStore(vectorStoreName);
                 log.info("RewriteQueryTransformer 注入成功");
-                DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-                BaseAdvisor advisor = createAdvisor(retriever,rewriteQueryTransformer);
+                BaseAdvisor advisor = getOrBuildAdvisor(vectorStoreName, "rewrite", vectorStore,
+                        () -> createAdvisor(vectorStoreName, "rewrite", vectorStore, "rewrite"));
 
                 log.info("准备开始 RAG 查询...");
-                return chat(chatClient, query, memoryId, advisor);
+                return respond(
+                        cachedWithDeadline(chatClient, vectorStoreName, "rewrite", query, memoryId,
+                                deadline -> chat(chatClient, query, memoryId, advisor, deadline)),
+                        vectorStoreName, "rewrite", start);
             }else{
-                return chatWithoutDocument(chatClient, query, memoryId);
+                return respond(chatWithoutDocument(chatClient, query, memoryId),
+                        vectorStoreName, "plain", start);
             }
 
         } catch (org.opensearch.client.opensearch._types.OpenSearchException e) {
@@ -200,70 +383,100 @@ public class AiQueryServiceImpl implements  IAiQueryService{
     @Override
     public Flux<String> queryWithCompressionTransformer(ChatClient chatClient, String vectorStoreName, String query
             , String memoryId){
-
+        long start = System.nanoTime();
         if(this.isVectorStoreValid(vectorStoreName)){
             VectorStore vectorStore = getVectorStore(vectorStoreName);
             log.info("CompressionQueryTransformer 注入成功");
-            DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-            BaseAdvisor advisor = createAdvisor(retriever,rewriteQueryTransformer,compressionQueryTransformer);
-            return chat(chatClient, query, memoryId, advisor);
+            BaseAdvisor advisor = getOrBuildAdvisor(vectorStoreName, "rewrite-compression", vectorStore,
+                    () -> createAdvisor(vectorStoreName, "rewrite-compression", vectorStore,
+                            "rewrite", "compression"));
+            return respond(
+                    cachedWithDeadline(chatClient, vectorStoreName, "rewrite-compression", query, memoryId,
+                            deadline -> chat(chatClient, query, memoryId, advisor, deadline)),
+                    vectorStoreName, "rewrite-compression", start);
         }else{
-            return chatWithoutDocument(chatClient,query,memoryId);
+            return respond(chatWithoutDocument(chatClient,query,memoryId),
+                    vectorStoreName, "plain", start);
         }
     }
     @Override
     public Flux<String> queryWithRewriteThenCompression(ChatClient chatClient, String vectorStoreName, String query
             , String memoryId){
-
+        long start = System.nanoTime();
         if(this.isVectorStoreValid(vectorStoreName)){
             VectorStore vectorStore = getVectorStore(vectorStoreName);
             log.info("CompressionQueryTransformer 注入成功");
-            DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-            BaseAdvisor advisor = createAdvisor(retriever,compressionQueryTransformer);
-            return chat(chatClient, query, memoryId, advisor);
+            BaseAdvisor advisor = getOrBuildAdvisor(vectorStoreName, "compression", vectorStore,
+                    () -> createAdvisor(vectorStoreName, "compression", vectorStore, "compression"));
+            return respond(
+                    cachedWithDeadline(chatClient, vectorStoreName, "compression", query, memoryId,
+                            deadline -> chat(chatClient, query, memoryId, advisor, deadline)),
+                    vectorStoreName, "compression", start);
         }else{
-            return chatWithoutDocument(chatClient,query,memoryId);
+            return respond(chatWithoutDocument(chatClient,query,memoryId),
+                    vectorStoreName, "plain", start);
         }
     }
     @Override
     public Flux<String> queryQueryExpander(ChatClient chatClient, String vectorStoreName, String query, String memoryId){
         log.info("MultiQueryExpander 注入成功");
-
+        long start = System.nanoTime();
         if(this.isVectorStoreValid(vectorStoreName)) {
             VectorStore vectorStore = getVectorStore(vectorStoreName);
-            List<Query> queries = multiQueryExpander.apply(Query.builder().text(query).build());
-            DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-            // 并行检索所有查询的文档
-            // 3. 并行检索，构建 Map<Query, List<Document>>
-            Map<Query, List<Document>> retrievedDocsMap = queries.parallelStream()
-                    .collect(Collectors.toMap(
-                            q -> q,
-                            q -> retriever.apply(q),
-                            (existing, replacement) -> existing,
-                            LinkedHashMap::new
-                    ));
-
-            // 4. 合并文档 - 构造 Map<Query, List<List<Document>>> 供 DocumentJoiner 使用
-            Map<Query, List<List<Document>>> joinerInput = new LinkedHashMap<>();
-            retrievedDocsMap.forEach((q, docs) -> {
-                joinerInput.put(q, List.of(docs));
-            });
-            DocumentJoiner documentJoiner = new ConcatenationDocumentJoiner();
-            List<Document> finalDocs = documentJoiner.join(joinerInput);
-            log.info("MultiQuery 检索完成 - 扩展查询数: {}, 检索文档总数: {}",
-                    queries.size(), finalDocs.size());
-
-            // 使用带文档的 chat 方法
-            return chatWithDocuments(chatClient, query, memoryId, finalDocs);
+
+            // 命中语义答案缓存时跳过扩展、检索和生成；整条链不阻塞流水线调度器的线程
+            return respond(cachedWithDeadline(chatClient, vectorStoreName, "multi-query", query, memoryId, deadline -> requestCoalescer
+                    // 扩展、检索、合并只依赖查询文本，相同查询的并发请求共享同一次执行
+                    .coalesceAsync(vectorStoreName, query, "multi-query",
+                            () -> multiQueryRetrieve(vectorStoreName, vectorStore, query, deadline))
+                    .flatMapMany(outcome -> {
+                        // 共享检索结果的请求同样记录被降级的阶段
+                        stageGuard.inherit(outcome, vectorStoreName, "multi-query", deadline);
+
+                        // 检索超时时退化为不带文档的普通查询
+                        if (deadline.isSkipped("retrieval")) {
+                            return chatWithoutDocument(chatClient, query, memoryId);
+                        }
+                        // 使用带文档的 chat 方法
+                        return chatWithDocuments(chatClient, query, memoryId, outcome.documents());
+                    })), vectorStoreName, "multi-query", start);
         }else{
-            return chatWithoutDocument(chatClient,query,memoryId);
+            return respond(chatWithoutDocument(chatClient,query,memoryId),
+                    vectorStoreName, "plain", start);
         }
 
     }
 
+    /**
+     * MultiQuery 的检索部分：扩展 → 并行检索 → 合并，结果与具体用户无关
+     * 扩展超时时只用原查询检索，随结果返回本次检索中被降级的阶段
+     */
+    private Mono<RetrievalOutcome> multiQueryRetrieve(String vectorStoreName, VectorStore vectorStore, String query,
+                                                      RagDeadline deadline) {
+        Query originalQuery = Query.builder().text(query).build();
+        DocumentRetriever retriever = pipelineMetrics.instrument(vectorStoreName, "multi-query",
+                createtDocumentRetriever(vectorStoreName, vectorStore));
+        return stageGuard.optional("expansion", vectorStoreName, "multi-query", deadline,
+                        expansionTimeout, () -> cachedMultiQueryExpander.expand(originalQuery), List.of(originalQuery))
+                // 在检索线程池上并行检索所有查询的文档，超时的查询被丢弃
+                .flatMap(queries -> parallelDocumentRetrieval.retrieveAllAsync(retriever, queries)
+                        .map(retrievedDocsMap -> {
+                            if (retrievedDocsMap.isEmpty()) {
+                                stageGuard.skip("retrieval", vectorStoreName, "multi-query", deadline, "所有查询均检索超时或失败");
+                                return RetrievalOutcome.of(List.<Document>of(), deadline);
+                            }
+
+                            // 合并文档 - 构造 Map<Query, List<List<Document>>> 供 DocumentJoiner 使用
+                            Map<Query, List<List<Document>>> joinerInput = new LinkedHashMap<>();
+                            retrievedDocsMap.forEach((q, docs) -> joinerInput.put(q, List.of(docs)));
+                            List<Document> joinedDocs = pipelineMetrics.timeStage("join", vectorStoreName, "multi-query",
+                                    () -> ragDocumentJoiner.join(joinerInput));
+                            log.info("MultiQuery 检索完成 - 扩展查询数: {}, 检索文档总数: {}",
+                                    queries.size(), joinedDocs.size());
+                            return RetrievalOutcome.of(joinedDocs, deadline);
+                        }));
+    }
+
     /**
      * QueryAugmenter 使用示例：在检索后对查询进行增强
      */
@@ -271,140 +484,329 @@ public class AiQueryServiceImpl implements  IAiQueryService{
         log.info("=== 开始 QueryAugmenter 查询 ===");
         log.info("原始查询: {}, VectorStore: {}", query, vectorStoreName);
         log.info("QueryAugmenter 注入成功");
+        long start = System.nanoTime();
 
         if(this.isVectorStoreValid(vectorStoreName)) {
             VectorStore vectorStore = getVectorStore(vectorStoreName);
-            DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-            // 1. 先检索文档
-            log.info("步骤 1: 检索文档");
-            List<Document> docs = retriever.apply(Query.builder().text(query).build());
-            log.info("检索到 {} 个文档", docs.size());
-
-            // 2. 使用 QueryAugmenter 根据上下文增强查询
-            log.info("步骤 2: 使用 QueryAugmenter 增强查询");
-            Query augmentedQuery = queryAugmenter.apply(
-                    Query.builder().text(query).build(),
-                    docs
-            );
-
-            log.info("原始查询: {}", query);
-            log.info("增强后查询: {}", augmentedQuery.text());
-
-            // 3. 使用增强后的查询生成回答（结合原始文档）
-            log.info("步骤 3: 生成回答");
-            return chatWithDocuments(chatClient, augmentedQuery.text(), memoryId, docs);
+            return respond(cachedWithDeadline(chatClient, vectorStoreName, "augmenter", query, memoryId, deadline -> {
+                DocumentRetriever retriever = createtDocumentRetriever(vectorStoreName, vectorStore);
+                Query originalQuery = Query.builder().text(query).build();
+
+                // 1. 先检索文档，相同查询的并发请求共享同一次检索；整条链不阻塞流水线调度器的线程
+                log.info("步骤 1: 检索文档");
+                return requestCoalescer.coalesceAsync(vectorStoreName, query, "augmenter",
+                                () -> stageGuard.optional("retrieval", vectorStoreName, "augmenter", deadline,
+                                                retrievalTimeout, () -> retriever.retrieve(originalQuery), List.<Document>of())
+                                        .map(docs -> RetrievalOutcome.of(docs, deadline)))
+                        .flatMapMany(outcome -> {
+                            stageGuard.inherit(outcome, vectorStoreName, "augmenter", deadline);
+                            // 检索超时时退化为不带文档的普通查询
+                            if (deadline.isSkipped("retrieval")) {
+                                return chatWithoutDocument(chatClient, query, memoryId);
+                            }
+                            List<Document> docs = outcome.documents();
+                            log.info("检索到 {} 个文档", docs.size());
+
+                            // 2. 使用 QueryAugmenter 根据上下文增强查询，超时时使用原查询
+                            log.info("步骤 2: 使用 QueryAugmenter 增强查询");
+                            return stageGuard.optional("augmentation", vectorStoreName, "augmenter", deadline,
+                                            augmentationTimeout, () -> queryAugmenter.apply(originalQuery, docs), originalQuery)
+                                    .flatMapMany(augmentedQuery -> {
+                                        log.info("原始查询: {}", query);
+                                        log.info("增强后查询: {}", augmentedQuery.text());
+
+                                        // 3. 使用增强后的查询生成回答（结合原始文档）
+                                        log.info("步骤 3: 生成回答");
+                                        return chatWithDocuments(chatClient, augmentedQuery.text(), memoryId, docs);
+                                    });
+                        });
+            }), vectorStoreName, "augmenter", start);
         }else{
             log.warn("VectorStore 无效，跳过 RAG 检索");
-            return chatWithoutDocument(chatClient, query, memoryId);
+            return respond(chatWithoutDocument(chatClient, query, memoryId),
+                    vectorStoreName, "plain", start);
+        }
+    }
+    /**
+     * 联邦查询：并行检索多个索引，每个索引独立超时，按各索引内的排名融合后取全局 topK 生成回答
+     * 与 advanceRag 一样由调用方直接使用本实现类；索引校验和检索运行在 ragPipelineScheduler 上
+     *
+     * @param chatClient ChatClient
+     * @param vectorStoreNames 索引名称列表，为空时检索所有已加载的索引
+     * @param query 用户查询
+     * @param memoryId 会话 ID
+     * @return 流式回答
+     */
+    public Flux<String> federatedQuery(ChatClient chatClient, List<String> vectorStoreNames, String query, String memoryId){
+        long start = System.nanoTime();
+        Flux<String> answer = Mono.fromCallable(() -> federatedRetrievers(vectorStoreNames))
+                .subscribeOn(ragPipelineScheduler)
+                .flatMapMany(retrievers -> {
+                    log.info("=== 开始联邦查询 === 查询: {}, 索引: {}", query, retrievers.keySet());
+                    if (retrievers.isEmpty()) {
+                        log.warn("没有可用的索引，直接返回普通查询");
+                        return chatWithoutDocument(chatClient, query, memoryId);
+                    }
+                    DocumentRetriever federatedRetriever = new FederatedDocumentRetriever(retrievers, retrievalExecutor,
+                            federatedIndexTimeout, federatedRankConstant, federatedTopK);
+                    return Mono.fromCallable(() -> federatedRetriever.retrieve(Query.builder().text(query).build()))
+                            .subscribeOn(ragPipelineScheduler)
+                            .flatMapMany(docs -> chatWithDocuments(chatClient, query, memoryId, docs));
+                });
+        return respond(answer, "federated", "federated", start);
+    }
+
+    /**
+     * 联邦查询的各索引检索器：指定的索引通过 getVectorStore 获取，未指定时使用所有已加载的索引，无效的索引被跳过
+     */
+    private Map<String, DocumentRetriever> federatedRetrievers(List<String> vectorStoreNames) {
+        Collection<String> candidates = vectorStoreNames == null || vectorStoreNames.isEmpty()
+                ? openSearchStoreRepository.getAllVectorStores().keySet()
+                : vectorStoreNames;
+        Map<String, DocumentRetriever> retrievers = new LinkedHashMap<>();
+        for (String vectorStoreName : candidates) {
+            if (!retrievers.containsKey(vectorStoreName) && this.isVectorStoreValid(vectorStoreName)) {
+                retrievers.put(vectorStoreName, pipelineMetrics.instrument(vectorStoreName, "federated",
+                        createtDocumentRetriever(vectorStoreName, getVectorStore(vectorStoreName))));
+            }
         }
+        return retrievers;
     }
+
     /**
      * All-In-One 查询：整合所有策略
      * 流程：Rewrite → Compression → MultiQuery扩展 → 检索 → QueryAugmenter增强 → 生成回答
+     * 整条流水线基于 Mono/Flux 组合，订阅时才执行，阻塞调用运行在 ragPipelineScheduler 上，
+     * 原始查询的检索与 Transform/Expand 链并行，每个阶段独立超时
      */
     @Override
     public Flux<String> allInOneQuery(ChatClient chatClient, String vectorStoreName, String query, String memoryId){
-        log.info("=== 开始 All-In-One 查询 ===");
-        log.info("原始查询: {}, VectorStore: {}", query, vectorStoreName);
-
-        if(!this.isVectorStoreValid(vectorStoreName)){
-            log.warn("VectorStore 无效，直接返回普通查询");
-            return chatWithoutDocument(chatClient, query, memoryId);
-        }
+        long start = System.nanoTime();
+        Flux<String> answer = isVectorStoreValidAsync(vectorStoreName)
+                .flatMapMany(valid -> {
+                    log.info("=== 开始 All-In-One 查询 ===");
+                    log.info("原始查询: {}, VectorStore: {}", query, vectorStoreName);
+                    if(!valid){
+                        log.warn("VectorStore 无效，直接返回普通查询");
+                        return chatWithoutDocument(chatClient, query, memoryId);
+                    }
+
+                    Query originalQuery = Query.builder().text(query).build();
+
+                    // 命中语义答案缓存时跳过整条流水线；步骤 1-5 只依赖查询文本，相同查询的并发请求共享同一次检索
+                    return cachedWithDeadline(chatClient, vectorStoreName, "all-in-one", query, memoryId, deadline -> requestCoalescer
+                            .coalesceAsync(vectorStoreName, query, "all-in-one",
+                                    () -> allInOneRetrieve(vectorStoreName, originalQuery, deadline))
+                            .flatMapMany(outcome -> {
+                                // 共享检索结果的请求同样记录被降级的阶段
+                                stageGuard.inherit(outcome, vectorStoreName, "all-in-one", deadline);
+                                // 检索超时时退化为不带文档的普通查询
+                                if (deadline.isSkipped("retrieval")) {
+                                    return chatWithoutDocument(chatClient, query, memoryId);
+                                }
+                                List<Document> finalDocs = outcome.documents();
+                                // 步骤 6: QueryAugmenter - 根据检索到的文档上下文增强查询（使用原始查询），超时时使用原查询
+                                log.info("步骤 6: QueryAugmenter 增强");
+                                return stageGuard.optional("augmentation", vectorStoreName, "all-in-one", deadline,
+                                                augmentationTimeout, () -> queryAugmenter.apply(originalQuery, finalDocs),
+                                                originalQuery)
+                                        .doOnNext(augmentedQuery -> log.info("增强后查询: {}", augmentedQuery.text()))
+                                        .flatMapMany(augmentedQuery -> {
+                                            // 步骤 7: 使用增强后的查询和文档生成回答
+                                            log.info("步骤 7: 生成回答");
+                                            return chatWithDocuments(chatClient, augmentedQuery.text(), memoryId, finalDocs);
+                                        });
+                            }));
+                });
+        return respond(answer, vectorStoreName, "all-in-one", start);
+    }
 
-        // 步骤 1: Rewrite Query Transformer - 重写查询，优化语义
-        log.info("步骤 1: Rewrite Query");
-        log.info("RewriteQueryTransformer 注入成功");
-        Query rewriteQuery = rewriteQueryTransformer.apply(Query.builder().text(query).build());
-        log.info("重写后查询: {}", rewriteQuery.text());
+    /**
+     * All-In-One 的检索部分（步骤 1-5），结果与具体用户无关，随结果返回本次检索中被降级的阶段
+     * 原始查询和扩展查询的检索都不超过请求的剩余预算，扩展链超时时只使用原始查询的结果
+     */
+    private Mono<RetrievalOutcome> allInOneRetrieve(String vectorStoreName, Query originalQuery, RagDeadline deadline) {
+        DocumentRetriever retriever = pipelineMetrics.instrument(vectorStoreName, "all-in-one",
+                createtDocumentRetriever(vectorStoreName, getVectorStore(vectorStoreName)));
+
+        // 原始查询的检索不依赖 Transform 结果，与步骤 1-3 并行执行
+        Mono<Map<Query, List<Document>>> originalDocs = withinDeadline(
+                parallelDocumentRetrieval.retrieveAllAsync(retriever, List.of(originalQuery)),
+                "original-retrieval", vectorStoreName, deadline);
+
+        // 步骤 1-3: Rewrite → Compression → MultiQuery 扩展，之后并行检索所有扩展查询
+        Mono<Map<Query, List<Document>>> expandedDocs = withinDeadline(expandQuery(vectorStoreName, originalQuery, deadline)
+                .flatMap(expandedQueries -> {
+                    log.info("步骤 4: 并行检索文档");
+                    return parallelDocumentRetrieval.retrieveAllAsync(retriever, expandedQueries);
+                }), "expanded-retrieval", vectorStoreName, deadline);
+
+        return Mono.zip(originalDocs, expandedDocs)
+                .map(tuple -> {
+                    // 所有查询都没有返回结果（超时或失败），而不是检索结果为空
+                    if (tuple.getT1().isEmpty() && tuple.getT2().isEmpty()) {
+                        stageGuard.skip("retrieval", vectorStoreName, "all-in-one", deadline, "所有查询均检索超时或失败");
+                        return RetrievalOutcome.of(List.<Document>of(), deadline);
+                    }
+                    // 步骤 5: 合并文档
+                    log.info("步骤 5: 合并文档");
+                    Map<Query, List<List<Document>>> joinerInput = new LinkedHashMap<>();
+                    tuple.getT2().forEach((q, docs) -> joinerInput.put(q, List.of(docs)));
+                    tuple.getT1().forEach((q, docs) -> joinerInput.putIfAbsent(q, List.of(docs)));
+                    List<Document> finalDocs = pipelineMetrics.timeStage("join", vectorStoreName, "all-in-one",
+                            () -> ragDocumentJoiner.join(joinerInput));
+                    log.info("合并后文档数量: {}", finalDocs.size());
+                    return RetrievalOutcome.of(finalDocs, deadline);
+                });
+    }
 
-        // 步骤 2: Compression Query Transformer - 压缩查询，去除冗余
-        log.info("步骤 2: Compression Query");
-        log.info("CompressionQueryTransformer 注入成功");
-        Query compressionQuery = compressionQueryTransformer.transform(rewriteQuery);
-        log.info("压缩后查询: {}", compressionQuery.text());
+    /**
+     * 步骤 1-3: Rewrite → Compression → MultiQuery 扩展
+     * 三个阶段存在数据依赖，按顺序执行；任一阶段超时或预算不足时沿用上一阶段的查询
+     */
+    private Mono<List<Query>> expandQuery(String vectorStoreName, Query originalQuery, RagDeadline deadline) {
+        return stageGuard.optional("rewrite", vectorStoreName, "all-in-one", deadline, rewriteTimeout,
+                        () -> cachedRewriteTransformer.transform(originalQuery), originalQuery)
+                .doOnNext(rewriteQuery -> log.info("重写后查询: {}", rewriteQuery.text()))
+                .flatMap(rewriteQuery -> stageGuard.optional("compression", vectorStoreName, "all-in-one", deadline,
+                        compressionTimeout, () -> cachedCompressionTransformer.transform(rewriteQuery), rewriteQuery))
+                .doOnNext(compressionQuery -> log.info("压缩后查询: {}", compressionQuery.text()))
+                .flatMap(compressionQuery -> stageGuard.optional("expansion", vectorStoreName, "all-in-one", deadline,
+                        expansionTimeout, () -> cachedMultiQueryExpander.expand(compressionQuery), List.of(compressionQuery)))
+                .doOnNext(expandedQueries -> log.info("扩展后查询数量: {}", expandedQueries.size()));
+    }
 
-        // 步骤 3: MultiQuery Expander - 扩展为多个查询变体
-        log.info("步骤 3: MultiQuery Expander");
-        log.info("MultiQueryExpander 注入成功");
-        List<Query> expandedQueries = multiQueryExpander.apply(compressionQuery);
-        log.info("扩展后查询数量: {}", expandedQueries.size());
+    /**
+     * 检索结果不晚于请求截止时间，超出时丢弃该部分结果
+     */
+    private Mono<Map<Query, List<Document>>> withinDeadline(Mono<Map<Query, List<Document>>> retrieval, String stageName,
+                                                            String vectorStoreName, RagDeadline deadline) {
+        return Mono.defer(() -> retrieval.timeout(deadline.remaining()))
+                .onErrorResume(e -> {
+                    stageGuard.skip(stageName, vectorStoreName, "all-in-one", deadline, "超出请求预算");
+                    return Mono.just(Map.of());
+                });
+    }
 
-        // 步骤 4: 并行检索所有查询的文档
-        log.info("步骤 4: 并行检索文档");
-        VectorStore vectorStore = getVectorStore(vectorStoreName);
-        DocumentRetriever retriever = createtDocumentRetriever(vectorStore);
-
-        Map<Query, List<Document>> retrievedDocsMap = expandedQueries.parallelStream()
-                .collect(Collectors.toMap(
-                        q -> q,
-                        q -> {
-                            List<Document> docs = retriever.apply(q);
-                            log.debug("  查询 '{}' 检索到 {} 个文档", q.text(), docs.size());
-                            return docs;
-                        },
-                        (existing, replacement) -> existing,
-                        LinkedHashMap::new
-                ));
-
-        // 步骤 5: 合并文档
-        log.info("步骤 5: 合并文档");
-        Map<Query, List<List<Document>>> joinerInput = new LinkedHashMap<>();
-        retrievedDocsMap.forEach((q, docs) -> {
-            joinerInput.put(q, List.of(docs));
+    /**
+     * 先查语义答案缓存，未命中时在请求截止时间预算内执行流水线；有阶段被降级的回答不写入缓存
+     * 调用方可以通过 Reactor Context 传入 RagDeadline 并在流结束后读取被跳过的阶段，否则使用默认预算
+     */
+    private Flux<String> cachedWithDeadline(ChatClient chatClient, String vectorStoreName, String variant, String query,
+                                            String memoryId, Function<RagDeadline, Flux<String>> pipeline) {
+        return Flux.deferContextual(context -> {
+            RagDeadline deadline = context.getOrDefault(RagDeadline.class, RagDeadline.after(pipelineDeadline));
+            return answerCache.answer(chatClient, vectorStoreName, variant, query, memoryId,
+                    () -> deadline.skippedStages().isEmpty(),
+                    () -> pipeline.apply(deadline)
+                            .doOnComplete(() -> {
+                                if (!deadline.skippedStages().isEmpty()) {
+                                    log.warn("请求已降级 - vectorStore: {}, variant: {}, 跳过的阶段: {}",
+                                            vectorStoreName, variant, deadline.skippedStages());
+                                }
+                            }));
         });
-        DocumentJoiner documentJoiner = new ConcatenationDocumentJoiner();
-        List<Document> finalDocs = documentJoiner.join(joinerInput);
-        log.info("合并后文档数量: {}", finalDocs.size());
-
-        // 步骤 6: QueryAugmenter - 根据检索到的文档上下文增强查询
-        log.info("步骤 6: QueryAugmenter 增强");
-        log.info("QueryAugmenter 注入成功");
-        Query augmentedQuery = queryAugmenter.apply(
-                Query.builder().text(query).build(),  // 使用原始查询
-                finalDocs                              // 使用检索到的文档
-        );
-        log.info("增强后查询: {}", augmentedQuery.text());
-
-        // 步骤 7: 使用增强后的查询和文档生成回答
-        log.info("步骤 7: 生成回答");
-        return chatWithDocuments(chatClient, augmentedQuery.text(), memoryId, finalDocs);
     }
 
 
 
 
-    private  BaseAdvisor createAdvisor(DocumentRetriever retriever,QueryTransformer...queryTransformers) {
+    /**
+     * @param transformStages 按顺序执行的查询转换阶段：rewrite / compression
+     */
+    private  BaseAdvisor createAdvisor(String vectorStoreName, String variant, VectorStore vectorStore,
+                                       String... transformStages) {
+        // 转换器超时时使用原查询，检索超时时返回空文档，耗时按阶段名称计入指标
+        QueryTransformer[] guarded = new QueryTransformer[transformStages.length];
+        for (int i = 0; i < transformStages.length; i++) {
+            String stage = transformStages[i];
+            guarded[i] = switch (stage) {
+                case "rewrite" -> stageGuard.guard(stage, vectorStoreName, variant, rewriteTimeout, cachedRewriteTransformer);
+                case "compression" -> stageGuard.guard(stage, vectorStoreName, variant, compressionTimeout,
+                        cachedCompressionTransformer);
+                default -> throw new IllegalArgumentException("Unknown transform stage: " + stage);
+            };
+        }
+        DocumentRetriever retriever = requestCoalescer.wrap(
+                stageGuard.guard(vectorStoreName, variant, retrievalTimeout,
+                        createtDocumentRetriever(vectorStoreName, vectorStore)),
+                vectorStoreName, variant);
         BaseAdvisor advisor = RetrievalAugmentationAdvisor.builder()
-                .queryTransformers(queryTransformers)
+                .queryTransformers(guarded)
                 .documentRetriever(retriever).build();
         log.info("RetrievalAugmentationAdvisor 创建成功");
         return advisor;
     }
 
-    private  DocumentRetriever createtDocumentRetriever(VectorStore vectorStore) {
+    /**
+     * @param vectorStoreName 已校验存在的索引名称，规范化后用于混合检索、异步检索和自适应截断
+     */
+    private  DocumentRetriever createtDocumentRetriever(String vectorStoreName, VectorStore vectorStore) {
+        // 自适应截断：按 max-k 取回一次候选集，再根据得分分布决定保留的文档数
+        if (adaptiveCutoffFactory.isEnabled()) {
+            return adaptiveCutoffFactory.create(IndexNames.normalize(vectorStoreName),
+                    createtDocumentRetriever(vectorStoreName, vectorStore, adaptiveCutoffFactory.candidateCount()));
+        }
+        return createtDocumentRetriever(vectorStoreName, vectorStore, this.defaultTopK);
+    }
+
+    private  DocumentRetriever createtDocumentRetriever(String vectorStoreName, VectorStore vectorStore, int topK) {
+        return createtDocumentRetriever(vectorStoreName, vectorStore, topK, false);
+    }
+
+    /**
+     * @param includeEmbeddings 是否随命中返回候选向量（MMR 使用）；OpenSearchVectorStore 的检索结果不含向量，
+     *                          向量检索模式下改为直接请求 OpenSearch 的检索器
+     */
+    private  DocumentRetriever createtDocumentRetriever(String vectorStoreName, VectorStore vectorStore, int topK,
+                                                        boolean includeEmbeddings) {
+        String indexName = IndexNames.normalize(vectorStoreName);
+        // 混合检索模式：一次 OpenSearch 请求同时执行 BM25 和 kNN，融合得分的阈值由混合检索单独配置
+        if ("hybrid".equalsIgnoreCase(retrievalMode)) {
+            DocumentRetriever retriever = hybridRetrieverFactory.create(indexName, topK,
+                    () -> buildFilterExpression(defaultCategory, defaultIsActive), includeEmbeddings);
+            log.info("DocumentRetriever 创建成功 (hybrid) - index: {}", indexName);
+            return retriever;
+        }
+
         // 创建 DocumentRetriever
         var builder = VectorStoreDocumentRetriever.builder()
                 .vectorStore(vectorStore)
-                .topK(this.defaultTopK)
+                .topK(topK)
                 .similarityThreshold(this.defaultSimilarityThreshold);
 
-        // 添加过滤表达式（从配置文件读取）
-        Filter.Expression filterExpression = buildFilterExpression(defaultCategory, defaultIsActive);
-        if (filterExpression != null) {
-            builder.filterExpression(filterExpression);
-            log.info("DocumentRetriever 应用过滤条件: category={}, isActive={}",
-                    defaultCategory, defaultIsActive);
+        // 添加过滤表达式（从配置文件读取），每次检索时重新构建，生效时间窗口按检索时刻计算
+        if (buildFilterExpression(defaultCategory, defaultIsActive) != null) {
+            builder.filterExpression(() -> buildFilterExpression(defaultCategory, defaultIsActive));
+            log.info("DocumentRetriever 应用过滤条件: category={}, isActive={}, validityWindow={}",
+                    defaultCategory, defaultIsActive, filterByValidityWindow);
         }
 
         DocumentRetriever retriever = builder.build();
+
+        // 异步检索：ParallelDocumentRetrieval 通过 OpenSearchAsyncClient 检索，阻塞检索器作为同步调用和失败时的回退；
+        // MMR 需要候选向量时同步调用也走直接请求
+        if (asyncRetrieverFactory.isEnabled() || includeEmbeddings) {
+            log.info("DocumentRetriever 创建成功 (async) - index: {}", indexName);
+            return asyncRetrieverFactory.create(indexName, topK, this.defaultSimilarityThreshold,
+                    () -> buildFilterExpression(defaultCategory, defaultIsActive), retriever, includeEmbeddings);
+        }
         log.info("DocumentRetriever 创建成功");
         return retriever;
     }
 
 
 
+    /**
+     * 对返回给客户端的输出流做合并和指标记录
+     * 端点名称取流水线变体冒号前的部分，如 advance:T-R-- 对应 advance
+     */
+    private Flux<String> respond(Flux<String> stream, String vectorStoreName, String variant, long startNanos) {
+        int separator = variant.indexOf(':');
+        String endpoint = separator < 0 ? variant : variant.substring(0, separator);
+        return pipelineMetrics.instrumentStream(streamCoalescer.coalesce(stream, endpoint), vectorStoreName, variant, startNanos);
+    }
+
     private Flux<String> chatWithoutDocument(ChatClient chatClient, String query, String memoryId) {
         return chat(chatClient,query,memoryId,null);
     }
@@ -420,6 +822,20 @@ public class AiQueryServiceImpl implements  IAiQueryService{
 
     }
 
+    /**
+     * 通过预构建的 Advisor 生成回答，请求的截止时间作为 Advisor 参数传入，
+     * Advisor 中各阶段的超时不超过剩余预算，降级的阶段记录在 deadline 上
+     */
+    private Flux<String> chat(ChatClient chatClient, String query, String memoryId, BaseAdvisor advisor,
+                              RagDeadline deadline) {
+        return chatClient.prompt()
+                .user(query)
+                .advisors(a -> a.param("chat_memory_conversation_id", memoryId).param(RagDeadline.CONTEXT_KEY, deadline))
+                .advisors(advisor)
+                .stream()
+                .content();
+    }
+
     private Flux<String> chatWithDocuments(ChatClient chatClient, String query, String memoryId, List<Document> finalDocs) {
         // 使用检索到的文档生成回答
         String ragPrompt = """
@@ -429,9 +845,13 @@ public class AiQueryServiceImpl implements  IAiQueryService{
                     {context}
                     请提供准确、简洁的回答：
                     """;
+        // 按 Token 预算组装上下文，避免文档过多导致 Prompt 超出模型限制
+        ContextPacker.PackedContext packedContext = contextPacker.pack(finalDocs);
+        List<Document> contextDocs = packedContext.documents();
+
         StringBuilder context = new StringBuilder();
-        for (int i = 0; i < finalDocs.size(); i++) {
-            Document doc = finalDocs.get(i);
+        for (int i = 0; i < contextDocs.size(); i++) {
+            Document doc = contextDocs.get(i);
             context.append("\n--- 文档 ").append(i + 1).append(" (相似度: ")
                     .append(doc.getMetadata().getOrDefault("distance", "N/A"))
                     .append(") ---\n");
@@ -459,6 +879,34 @@ public class AiQueryServiceImpl implements  IAiQueryService{
         }
         return vectorStore;
     }
+    /**
+     * 索引删除、重新创建或切换别名时都会发布写入事件，失效该索引的 VectorStore 缓存；
+     * 下次请求重新从 OpenSearchStoreService 获取，实例未变化时 getOrBuildAdvisor 继续复用预构建的 Advisor
+     */
+    @EventListener
+    public void onVectorStoreWrite(VectorStoreWriteEvent event) {
+        if (vectorStoreCache.keySet().removeIf(name -> IndexNames.normalize(name).equals(event.indexName()))) {
+            log.debug("VectorStore 缓存已失效: {}", event.indexName());
+        }
+    }
+
+    /**
+     * isVectorStoreValid 的非阻塞版本：仓库实现提供异步 API 时通过 OpenSearchAsyncClient 查询，
+     * 等待响应期间不占用 ragPipelineScheduler 线程，结果切回 ragPipelineScheduler 继续执行后续阶段
+     */
+    private Mono<Boolean> isVectorStoreValidAsync(String vectorStoreName) {
+        if (openSearchStoreRepository instanceof OpenSearchStoreRepositoryImpl repository) {
+            return Mono.fromFuture(() -> repository.indexExistsAsync(vectorStoreName))
+                    .filter(Boolean::booleanValue)
+                    .flatMap(exists -> Mono.fromFuture(() -> repository.getDocumentCountAsync(vectorStoreName)))
+                    .map(count -> count > 0)
+                    .defaultIfEmpty(false)
+                    .publishOn(ragPipelineScheduler);
+        }
+        return Mono.fromCallable(() -> this.isVectorStoreValid(vectorStoreName))
+                .subscribeOn(ragPipelineScheduler);
+    }
+
     private boolean isVectorStoreValid(String vectorStore){
         // 检查索引是否存在
         return isVectorStoreExists(vectorStore) && hasContent(vectorStore);
@@ -476,7 +924,7 @@ public class AiQueryServiceImpl implements  IAiQueryService{
      *
      * @param category 文档分类（可选）
      * @param isActive 是否只检索活跃文档（可选）
-     * @return Filter.Expression 过滤表达式，如果两个参数都为空则返回 null
+     * @return Filter.Expression 过滤表达式，如果两个参数都为空且未启用生效时间窗口则返回 null
      */
     private Filter.Expression buildFilterExpression(String category, Boolean isActive) {
         // 收集所有有效的过滤条件
@@ -495,6 +943,11 @@ public class AiQueryServiceImpl implements  IAiQueryService{
             log.debug("添加 isActive 过滤条件: {}", isActive);
         }
 
+        // 添加生效时间窗口过滤条件，在 OpenSearch 端与向量检索一起执行
+        if (filterByValidityWindow) {
+            expressions.add(DocumentValidity.activeAt(System.currentTimeMillis()));
+        }
+
         // 根据条件数量返回结果
         if (expressions.isEmpty()) {
             log.debug("没有配置过滤条件");
@@ -1,16 +1,17 @@
 package com.ws16289.daxi.service.impl.ai;
 
+import com.ws16289.daxi.repository.impl.BulkIngestionWriter;
 import com.ws16289.daxi.util.splitter.IDocumentSplitter;
 import com.ws16289.daxi.util.splitter.DocumentSplitterManager;
 import com.ws16289.daxi.util.splitter.facotry.SplitterType;
 import com.ws16289.daxi.util.splitter.facotry.SplitterFactoryProvider;
+import com.ws16289.daxi.util.DocumentValidity;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.reader.ExtractedTextFormatter;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -42,6 +43,9 @@ public class CsvBatchDocumentProcessor {
     @Autowired
     private DocumentSplitterManager documentSplitterManager;
 
+    @Autowired
+    private BulkIngestionWriter bulkIngestionWriter;
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     /**
@@ -329,14 +333,18 @@ public class CsvBatchDocumentProcessor {
             doc.getMetadata().put("is_active", task.isActive);
             doc.getMetadata().put("valid_from_date", validStartDateTime.format(DATE_FORMATTER));
             doc.getMetadata().put("valid_end_date", validEndDateTime.format(DATE_FORMATTER));
+            DocumentValidity.putValidityWindow(doc.getMetadata(), validStartDateTime, validEndDateTime);
             doc.getMetadata().put("upload_time", uploadTime);
         });
 
-        // 获取 VectorStore
-        VectorStore vectorStore = openSearchStoreService.createVectorStore(task.indexName);
+        // 确保索引已创建
+        openSearchStoreService.createVectorStore(task.indexName);
 
-        // 写入向量库
-        vectorStore.add(splitDocuments);
+        // 分批写入向量库
+        BulkIngestionWriter.IngestionResult result = bulkIngestionWriter.write(task.indexName, splitDocuments);
+        if (!result.isSuccess()) {
+            throw new RuntimeException(String.format("部分文档写入失败: %d/%d", result.failed(), result.total()));
+        }
         log.info("成功写入 {} 个向量到索引: {}", splitDocuments.size(), task.indexName);
     }
 
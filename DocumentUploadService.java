@@ -3,8 +3,10 @@ package com.ws16289.daxi.service.impl.ai;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ws16289.daxi.dto.DocumentUploadRequest;
+import com.ws16289.daxi.repository.impl.BulkIngestionWriter;
 import com.ws16289.daxi.util.splitter.IDocumentSplitter;
 import com.ws16289.daxi.util.splitter.facotry.SplitterType;
+import com.ws16289.daxi.util.DocumentValidity;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.model.transformer.KeywordMetadataEnricher;
@@ -14,7 +16,6 @@ import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.transformer.ContentFormatTransformer;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -53,6 +54,9 @@ public class DocumentUploadService {
     @Autowired
     private OpenSearchStoreService openSearchStoreService;
 
+    @Autowired
+    private BulkIngestionWriter bulkIngestionWriter;
+
     @Autowired
     private com.ws16289.daxi.util.splitter.DocumentSplitterManager documentSplitterManager;
 
@@ -138,6 +142,7 @@ public class DocumentUploadService {
                 doc.getMetadata().put("is_active", isActive);
                 doc.getMetadata().put("valid_from_date", validStartDateTime.format(DATE_FORMATTER));
                 doc.getMetadata().put("valid_end_date", validEndDateTime.format(DATE_FORMATTER));
+                DocumentValidity.putValidityWindow(doc.getMetadata(), validStartDateTime, validEndDateTime);
                 if (uploader != null && !uploader.isEmpty()) {
                     doc.getMetadata().put("uploader", uploader);
                 }
@@ -242,10 +247,9 @@ public class DocumentUploadService {
             return Map.of("success", false, "message", "索引 '" + indexName + "' 不存在，请先创建");
         }
 
-        // 获取VectorStore实例
-        VectorStore vectorStore;
+        // 获取VectorStore实例，确保索引已创建
         try {
-            vectorStore = openSearchStoreService.createVectorStore(indexName);
+            openSearchStoreService.createVectorStore(indexName);
         } catch (Exception e) {
             log.error("获取VectorStore实例失败: {}", indexName, e);
             return Map.of("success", false, "message", "获取VectorStore实例失败: " + e.getMessage());
@@ -270,6 +274,7 @@ public class DocumentUploadService {
                 document.getMetadata().put("is_active", isActive);
                 document.getMetadata().put("valid_from_date", validStartDateTime.format(DATE_FORMATTER));
                 document.getMetadata().put("valid_end_date", validEndDateTime.format(DATE_FORMATTER));
+                DocumentValidity.putValidityWindow(document.getMetadata(), validStartDateTime, validEndDateTime);
                 if (uploader != null && !uploader.isEmpty()) {
                     document.getMetadata().put("uploader", uploader);
                 }
@@ -286,8 +291,11 @@ public class DocumentUploadService {
 //                    )
 //            );
 
-            // 写入向量库
-            vectorStore.add(documents);
+            // 分批写入向量库
+            BulkIngestionWriter.IngestionResult result = bulkIngestionWriter.write(indexName, documents);
+            if (!result.isSuccess()) {
+                throw new RuntimeException(String.format("部分文档写入失败: %d/%d", result.failed(), result.total()));
+            }
             log.info("成功写入 {} 个向量到索引: {}", documents.size(), indexName);
 
             // 保存成功后删除缓存
@@ -347,10 +355,9 @@ public class DocumentUploadService {
             }
         }
 
-        VectorStore vectorStore = null;
         if (!previewOnly) {
             try {
-                vectorStore = openSearchStoreService.createVectorStore(indexName);
+                openSearchStoreService.createVectorStore(indexName);
             } catch (Exception e) {
                 log.error("获取VectorStore实例失败: {}", indexName, e);
                 return Map.of("success", false, "message", "获取VectorStore实例失败: " + e.getMessage());
@@ -393,6 +400,7 @@ public class DocumentUploadService {
                 document.getMetadata().put("is_active", isActive);
                 document.getMetadata().put("valid_from_date", validStartDateTime.format(DATE_FORMATTER));
                 document.getMetadata().put("valid_end_date", validEndDateTime.format(DATE_FORMATTER));
+                DocumentValidity.putValidityWindow(document.getMetadata(), validStartDateTime, validEndDateTime);
                 if (uploader != null && !uploader.isEmpty()) {
                     document.getMetadata().put("uploader", uploader);
                 }
@@ -417,8 +425,11 @@ public class DocumentUploadService {
                 );
             }
 
-            // 写入向量库
-            vectorStore.add(splitDocuments);
+            // 分批写入向量库
+            BulkIngestionWriter.IngestionResult result = bulkIngestionWriter.write(indexName, splitDocuments);
+            if (!result.isSuccess()) {
+                throw new RuntimeException(String.format("部分文档写入失败: %d/%d", result.failed(), result.total()));
+            }
             log.info("成功写入 {} 个向量到索引: {}", splitDocuments.size(), indexName);
 
             return Map.of(
@@ -1,7 +1,9 @@
 package com.ws16289.daxi.repository.impl;
 
 import com.ws16289.daxi.repository.OpenSearchStoreRepository;
+import com.ws16289.daxi.util.IndexNames;
 import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
 import org.opensearch.client.opensearch.OpenSearchClient;
 import org.opensearch.client.opensearch._types.OpenSearchException;
 import org.opensearch.client.opensearch.indices.ExistsRequest;
@@ -9,13 +11,21 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.opensearch.OpenSearchVectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Repository;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * OpenSearch 向量存储 Repository 实现类，依赖OpenSearchAPI
@@ -29,12 +39,28 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     @Autowired
     private OpenSearchClient openSearchClient;
 
+    // 与 openSearchClient 共用 transport 的异步客户端，用于 *Async 方法
+    @Autowired
+    private OpenSearchAsyncClient openSearchAsyncClient;
+
     @Autowired
     private org.springframework.ai.embedding.EmbeddingModel embeddingModel;
 
     @Autowired(required = false)
     private VectorStore defaultVectorStore;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private OpenSearchHealthMonitor healthMonitor;
+
+    @Autowired
+    private KnnIndexTemplate knnIndexTemplate;
+
 //    @Value("${spring.ai.vectorstore.opensearch.initialize-schema:false}")
 //    private boolean initializeSchema;
 //    // Spring AI 默认的 index 名称
@@ -46,16 +72,30 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     // 已存在的 index 集合
     private final Set<String> existingIndexes = ConcurrentHashMap.newKeySet();
 
+    // 索引元数据缓存（是否存在、文档数），热路径上 indexExists / getDocumentCount 直接读内存
+    private final Map<String, IndexCatalogEntry> indexCatalog = new ConcurrentHashMap<>();
+
+    @Value("${opensearch.catalog.exists-ttl:60s}")
+    private Duration catalogExistsTtl;
+
+    @Value("${opensearch.catalog.count-ttl:15s}")
+    private Duration catalogCountTtl;
+
+    @Value("${opensearch.catalog.refresh-interval:10s}")
+    private Duration catalogRefreshInterval;
+
+    private ScheduledExecutorService catalogRefresher;
+
     /**
      * 初始化时加载所有已存在的索引到缓存
      */
     @PostConstruct
     public void init() {
-        try {
-            // 验证 OpenSearch 连接
-            openSearchClient.info();
-            log.info("OpenSearch connection verified");
+        // 所有 VectorStore 共享查询向量缓存，相同查询文本不重复调用 Embedding 接口
+        embeddingModel = embeddingCache.wrap(embeddingModel);
 
+        // 连接状态由 OpenSearchHealthMonitor 在启动时检查
+        if (healthMonitor.isAvailable()) {
             // 获取所有索引（过滤内部索引）
             var allIndexes = getAllIndexes();
             log.info("Found {} indexes in OpenSearch", allIndexes.size());
@@ -70,7 +110,7 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
                                 .index(indexName)
                                 .build();
 
-                        vectorStoreMap.put(indexName, openSearchVectorStore);
+                        vectorStoreMap.put(indexName, notifyOnWrite(openSearchVectorStore, indexName));
                         existingIndexes.add(indexName);
                         log.info("Cached VectorStore for index: {}", indexName);
                     } catch (Exception e) {
@@ -80,62 +120,148 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
             }
 
             log.info("Initialization complete. Cached {} VectorStores", vectorStoreMap.size());
-        } catch (IOException e) {
-            log.warn("OpenSearch not available or failed to initialize: {}", e.getMessage());
-            log.info("VectorStore caching will be deferred until OpenSearch is available");
+        } else {
+            log.warn("OpenSearch not available, VectorStore caching will be deferred until OpenSearch is available");
         }
+
+        // 后台定时刷新索引元数据缓存
+        catalogRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "opensearch-catalog-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = catalogRefreshInterval.toMillis();
+        catalogRefresher.scheduleWithFixedDelay(this::refreshIndexCatalog, 0, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
-    @Override
-    public VectorStore createVectorStore(String indexName) {
-        String normalizedName = normalizeIndexName(indexName);
+    @PreDestroy
+    public void destroy() {
+        if (catalogRefresher != null) {
+            catalogRefresher.shutdownNow();
+        }
+    }
 
-        // 验证 OpenSearch 连接
+    /**
+     * 刷新索引元数据缓存
+     * 一次 _cat/indices 请求即可获取所有索引的存在性和文档数
+     */
+    void refreshIndexCatalog() {
+        // 集群不可用时保留旧条目，恢复后再刷新
+        if (!healthMonitor.isAvailable()) {
+            return;
+        }
         try {
-            openSearchClient.info();
-            log.info("OpenSearch connection verified");
-        } catch (IOException e) {
-            log.error("Cannot connect to OpenSearch", e);
-            throw new RuntimeException("Cannot connect to OpenSearch: " + e.getMessage(), e);
+            var response = openSearchClient.cat().indices(i -> i);
+            Map<String, String> aliases = aliasesByIndex();
+            long now = System.currentTimeMillis();
+            Set<String> seen = new HashSet<>();
+            response.valueBody().forEach(record -> {
+                String physicalName = record.index();
+                if (physicalName == null || isHiddenIndex(physicalName, aliases)) {
+                    return;
+                }
+                // 别名背后的物理索引以别名登记
+                String indexName = aliases.getOrDefault(physicalName, physicalName);
+                seen.add(indexName);
+                indexCatalog.put(indexName, IndexCatalogEntry.ofCount(parseDocsCount(record.docsCount()), now));
+            });
+            // 已缓存但不再存在的索引
+            indexCatalog.keySet().stream()
+                    .filter(indexName -> !seen.contains(indexName))
+                    .forEach(indexName -> indexCatalog.put(indexName, new IndexCatalogEntry(false, now, -1, now)));
+            healthMonitor.recordSuccess();
+            log.debug("Index catalog refreshed, {} indexes", seen.size());
+        } catch (Exception e) {
+            healthMonitor.recordFailure(e);
+            // 刷新失败时保留旧条目，过期后热路径会回退为直接查询 OpenSearch
+            log.warn("Failed to refresh index catalog: {}", e.getMessage());
         }
+    }
+
+    /**
+     * 失效索引元数据缓存，索引写入、删除后调用
+     */
+    public void invalidateIndexCatalog(String indexName) {
+        indexCatalog.remove(normalizeIndexName(indexName));
+        log.debug("Index catalog invalidated: {}", indexName);
+    }
+
+    private VectorStore notifyOnWrite(VectorStore vectorStore, String indexName) {
+        return new WriteNotifyingVectorStore(vectorStore, indexName, this::notifyIndexWritten);
+    }
+
+    /**
+     * 索引内容变化后失效元数据缓存并发布写入事件，绕过 VectorStore 直接写入（如批量写入）时调用
+     */
+    void notifyIndexWritten(String indexName) {
+        invalidateIndexCatalog(indexName);
+        eventPublisher.publishEvent(new VectorStoreWriteEvent(indexName));
+    }
+
+    private long parseDocsCount(String docsCount) {
+        if (docsCount == null || docsCount.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(docsCount);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public VectorStore createVectorStore(String indexName) {
+        String normalizedName = normalizeIndexName(indexName);
 
         if (vectorStoreMap.containsKey(normalizedName)) {
             log.info("VectorStore: '{}' exists, returning cached instance", normalizedName);
             return vectorStoreMap.get(normalizedName);
         }
-        //此时schema不会真正创建
-        OpenSearchVectorStore openSearchVectorStore = OpenSearchVectorStore.builder(openSearchClient, embeddingModel)
-                .initializeSchema(true)
-                .index(normalizedName)
-                .build();
 
-        // 添加空文档触发 schema 创建
+        // 集群不可用时快速失败
+        healthMonitor.ensureAvailable();
+        // 按 kNN 模板显式创建索引的 settings 和 mapping，索引已存在时跳过
         try {
-            org.springframework.ai.document.Document doc = new org.springframework.ai.document.Document("init");
-            openSearchVectorStore.add(java.util.List.of(doc));
-            // schema 创建成功后立即删除临时文档，此后schema 创建但不可读，直到上传新的文档
-            openSearchClient.delete(d -> d.index(normalizedName).id("init"));
-            log.info("Schema created for index: {}", normalizedName);
-        } catch (Exception e) {
-            log.warn("Failed to trigger schema creation with temp document: {}", e.getMessage());
+            if (knnIndexTemplate.createIndex(normalizedName)) {
+                log.info("Schema created for index: {}", normalizedName);
+            }
+        } catch (IOException e) {
+            log.error("Failed to create index: {}", normalizedName, e);
+            throw new RuntimeException("Failed to create index '" + normalizedName + "': " + e.getMessage(), e);
         }
 
-        vectorStoreMap.put(normalizedName, openSearchVectorStore);
+        OpenSearchVectorStore openSearchVectorStore = OpenSearchVectorStore.builder(openSearchClient, embeddingModel)
+                .initializeSchema(false)
+                .index(normalizedName)
+                .build();
+
+        VectorStore vectorStore = notifyOnWrite(openSearchVectorStore, normalizedName);
+        vectorStoreMap.put(normalizedName, vectorStore);
         existingIndexes.add(normalizedName);
+        invalidateIndexCatalog(normalizedName);
         log.info("A new VectorStore for {} created", normalizedName);
-        return openSearchVectorStore;
+        return vectorStore;
     }
 
     @Override
     public boolean deleteIndex(String indexName) throws IOException {
         String normalizedName = normalizeIndexName(indexName);
         try {
-            boolean deleted = openSearchClient.indices().delete(d -> d.index(normalizedName)).acknowledged();
+            // 名称是别名时删除其背后的物理索引，OpenSearch 不允许按别名删除索引
+            List<String> physicalNames = aliasesByIndex().entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(normalizedName))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            List<String> targets = physicalNames.isEmpty() ? List.of(normalizedName) : physicalNames;
+            boolean deleted = openSearchClient.indices().delete(d -> d.index(targets)).acknowledged();
 
             if (deleted) {
                 // 从缓存中移除
                 vectorStoreMap.remove(normalizedName);
                 existingIndexes.remove(normalizedName);
+                long now = System.currentTimeMillis();
+                indexCatalog.put(normalizedName, new IndexCatalogEntry(false, now, -1, now));
+                eventPublisher.publishEvent(new VectorStoreWriteEvent(normalizedName));
                 log.info("Deleted index: {}", normalizedName);
             }
 
@@ -150,11 +276,24 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     public boolean indexExists(String indexName) {
         String normalizedName = normalizeIndexName(indexName);
 
+        IndexCatalogEntry entry = indexCatalog.get(normalizedName);
+        if (entry != null && entry.isExistsFresh(catalogExistsTtl)) {
+            return entry.exists();
+        }
+
+        // 集群不可用时不发请求，使用过期的缓存条目
+        if (!healthMonitor.isAvailable()) {
+            log.warn("OpenSearch is down, indexExists('{}') served from stale catalog", normalizedName);
+            return entry != null && entry.exists();
+        }
+
         try {
-            // 先验证连接
-            openSearchClient.info();
-            return openSearchClient.indices().exists(ExistsRequest.of(e -> e.index(normalizedName))).value();
+            boolean exists = openSearchClient.indices().exists(ExistsRequest.of(e -> e.index(normalizedName))).value();
+            healthMonitor.recordSuccess();
+            indexCatalog.compute(normalizedName, (name, old) -> IndexCatalogEntry.ofExists(old, exists));
+            return exists;
         } catch (IOException e) {
+            healthMonitor.recordFailure(e);
             log.error("Failed to check if index exists: {}", normalizedName, e);
             return false;
         }
@@ -184,14 +323,31 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     public long getDocumentCount(String indexName) {
         String normalizedName = normalizeIndexName(indexName);
 
-        try {
-            // 先验证连接
-            openSearchClient.info();
+        IndexCatalogEntry entry = indexCatalog.get(normalizedName);
+        if (entry != null) {
+            if (entry.isExistsFresh(catalogExistsTtl) && !entry.exists()) {
+                return -1;
+            }
+            if (entry.isCountFresh(catalogCountTtl)) {
+                return entry.documentCount();
+            }
+        }
 
+        // 集群不可用时不发请求，使用过期的缓存条目
+        if (!healthMonitor.isAvailable()) {
+            log.warn("OpenSearch is down, getDocumentCount('{}') served from stale catalog", normalizedName);
+            return entry != null && entry.countCheckedAt() > 0 ? entry.documentCount() : -1;
+        }
+
+        try {
             // 使用 count API 查询索引中的文档数量
             var response = openSearchClient.count(c -> c.index(normalizedName));
-            return response.count();
+            healthMonitor.recordSuccess();
+            long count = response.count();
+            indexCatalog.put(normalizedName, IndexCatalogEntry.ofCount(count, System.currentTimeMillis()));
+            return count;
         } catch (IOException e) {
+            healthMonitor.recordFailure(e);
             log.error("Failed to get document count for index '{}': {}", normalizedName, e.getMessage());
             return -1;
         } catch (Exception e) {
@@ -200,15 +356,107 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
         }
     }
 
+    /**
+     * {@link #indexExists(String)} 的非阻塞版本，缓存和集群不可用时的行为一致；
+     * 需要请求 OpenSearch 时通过 OpenSearchAsyncClient 发出，等待响应期间不占用线程
+     */
+    public CompletableFuture<Boolean> indexExistsAsync(String indexName) {
+        String normalizedName = normalizeIndexName(indexName);
+
+        IndexCatalogEntry entry = indexCatalog.get(normalizedName);
+        if (entry != null && entry.isExistsFresh(catalogExistsTtl)) {
+            return CompletableFuture.completedFuture(entry.exists());
+        }
+        if (!healthMonitor.isAvailable()) {
+            log.warn("OpenSearch is down, indexExistsAsync('{}') served from stale catalog", normalizedName);
+            return CompletableFuture.completedFuture(entry != null && entry.exists());
+        }
+
+        try {
+            return openSearchAsyncClient.indices().exists(ExistsRequest.of(e -> e.index(normalizedName)))
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            recordAsyncFailure(error);
+                            log.error("Failed to check if index exists: {}", normalizedName, unwrap(error));
+                            return false;
+                        }
+                        healthMonitor.recordSuccess();
+                        boolean exists = response.value();
+                        indexCatalog.compute(normalizedName, (name, old) -> IndexCatalogEntry.ofExists(old, exists));
+                        return exists;
+                    });
+        } catch (IOException e) {
+            healthMonitor.recordFailure(e);
+            log.error("Failed to check if index exists: {}", normalizedName, e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * {@link #getDocumentCount(String)} 的非阻塞版本，缓存和集群不可用时的行为一致，失败时返回 -1
+     */
+    public CompletableFuture<Long> getDocumentCountAsync(String indexName) {
+        String normalizedName = normalizeIndexName(indexName);
+
+        IndexCatalogEntry entry = indexCatalog.get(normalizedName);
+        if (entry != null) {
+            if (entry.isExistsFresh(catalogExistsTtl) && !entry.exists()) {
+                return CompletableFuture.completedFuture(-1L);
+            }
+            if (entry.isCountFresh(catalogCountTtl)) {
+                return CompletableFuture.completedFuture(entry.documentCount());
+            }
+        }
+        if (!healthMonitor.isAvailable()) {
+            log.warn("OpenSearch is down, getDocumentCountAsync('{}') served from stale catalog", normalizedName);
+            return CompletableFuture.completedFuture(entry != null && entry.countCheckedAt() > 0 ? entry.documentCount() : -1L);
+        }
+
+        try {
+            return openSearchAsyncClient.count(c -> c.index(normalizedName))
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            recordAsyncFailure(error);
+                            log.error("Failed to get document count for index '{}': {}", normalizedName, unwrap(error).getMessage());
+                            return -1L;
+                        }
+                        healthMonitor.recordSuccess();
+                        long count = response.count();
+                        indexCatalog.put(normalizedName, IndexCatalogEntry.ofCount(count, System.currentTimeMillis()));
+                        return count;
+                    });
+        } catch (IOException e) {
+            healthMonitor.recordFailure(e);
+            log.error("Failed to get document count for index '{}': {}", normalizedName, e.getMessage());
+            return CompletableFuture.completedFuture(-1L);
+        }
+    }
+
+    /**
+     * 与阻塞方法一致，只有 IO 异常计入集群健康状态
+     */
+    private void recordAsyncFailure(Throwable error) {
+        if (unwrap(error) instanceof IOException e) {
+            healthMonitor.recordFailure(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
     @Override
     public List<String> getAllIndexes() {
         try {
             // 实时查询 OpenSearch 获取所有索引
             var response = openSearchClient.cat().indices(i -> i);
+            Map<String, String> aliases = aliasesByIndex();
             return response.valueBody().stream()
                     .map(record -> record.index())
-                    // 过滤掉 OpenSearch 内部索引（以点开头或 top_queries 开头的）
-                    .filter(index -> !index.startsWith(".") && !index.startsWith("top_queries"))
+                    .filter(index -> !isHiddenIndex(index, aliases))
+                    // 别名背后的物理索引以别名返回
+                    .map(index -> aliases.getOrDefault(index, index))
+                    .distinct()
                     .toList();
         } catch (IOException e) {
             log.error("Failed to get indexes from OpenSearch", e);
@@ -224,12 +472,9 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     public List<IndexInfo> getIndexDetails() {
         try {
             var response = openSearchClient.cat().indices(i -> i);
+            Map<String, String> aliases = aliasesByIndex();
             return response.valueBody().stream()
-                    .filter(record -> {
-                        String indexName = record.index();
-                        // 过滤掉 OpenSearch 内部索引
-                        return !indexName.startsWith(".") && !indexName.startsWith("top_queries");
-                    })
+                    .filter(record -> !isHiddenIndex(record.index(), aliases))
                     .map(record -> {
                         String creationDate = "N/A";
 
@@ -246,7 +491,7 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
                                     record.index(), record.creationDate(), record.creationDateString());
                         }
 
-                        return new IndexInfo(record.index(), creationDate);
+                        return new IndexInfo(aliases.getOrDefault(record.index(), record.index()), creationDate);
                     })
                     .toList();
         } catch (IOException e) {
@@ -255,6 +500,34 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
         }
     }
 
+    /**
+     * 物理索引名称到别名的映射，只包含有别名的索引
+     * 重建索引后业务使用的索引名称是别名，实际数据在 {@link IndexMigrator} 创建的物理索引中
+     */
+    Map<String, String> aliasesByIndex() {
+        try {
+            var response = openSearchClient.indices().getAlias(g -> g);
+            Map<String, String> aliases = new HashMap<>();
+            response.result().forEach((index, indexAliases) -> indexAliases.aliases().keySet().stream()
+                    .filter(alias -> !alias.startsWith("."))
+                    .forEach(alias -> aliases.put(index, alias)));
+            return aliases;
+        } catch (IOException | OpenSearchException e) {
+            log.warn("Failed to get index aliases: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * OpenSearch 内部索引（以点开头或 top_queries 开头的），以及重建中尚未切换别名的物理索引
+     */
+    private static boolean isHiddenIndex(String indexName, Map<String, String> aliases) {
+        if (indexName.startsWith(".") || indexName.startsWith("top_queries")) {
+            return true;
+        }
+        return !aliases.containsKey(indexName) && IndexMigrator.isPhysicalIndexName(indexName);
+    }
+
     @Override
     public void testConnection() throws IOException {
         openSearchClient.info();
@@ -266,41 +539,54 @@ public class OpenSearchStoreRepositoryImpl implements OpenSearchStoreRepository
     public record IndexInfo(String indexName, String creationDate) {
     }
 
-    @Override
-    public Map<String, VectorStore> getAllVectorStores() {
-        return new HashMap<>(vectorStoreMap);
-    }
-
     /**
-     * 规范化 index 名称
-     * 只允许小写字母、数字、连字符和下划线
+     * 索引元数据缓存条目
      *
-     * @param indexName 原始 index 名称
-     * @return 规范化后的名称
+     * @param exists 索引是否存在
+     * @param existsCheckedAt exists 的获取时间（毫秒），0 表示未知
+     * @param documentCount 文档数
+     * @param countCheckedAt documentCount 的获取时间（毫秒），0 表示未知
      */
-    private String normalizeIndexName(String indexName) {
-        if (indexName == null || indexName.trim().isEmpty()) {
-            throw new IllegalArgumentException("Index name cannot be null or empty");
-        }
+    record IndexCatalogEntry(boolean exists, long existsCheckedAt, long documentCount, long countCheckedAt) {
 
-        // 转小写
-        String normalized = indexName.toLowerCase().trim();
-
-        // 替换非法字符
-        normalized = normalized.replaceAll("[^a-z0-9_-]", "-");
+        static IndexCatalogEntry ofExists(IndexCatalogEntry old, boolean exists) {
+            long now = System.currentTimeMillis();
+            if (!exists) {
+                return new IndexCatalogEntry(false, now, -1, now);
+            }
+            return old == null
+                    ? new IndexCatalogEntry(true, now, -1, 0)
+                    : new IndexCatalogEntry(true, now, old.documentCount(), old.countCheckedAt());
+        }
 
-        // 确保不以连字符或下划线开头
-        normalized = normalized.replaceAll("^[-_]+", "");
+        /**
+         * 能查询到文档数说明索引存在；文档数为 0 时不缓存：刚写入的文档在索引 refresh 前不计入 count，
+         * 缓存的 0 会让新上传的索引在 count-ttl 内被当作空索引
+         */
+        static IndexCatalogEntry ofCount(long documentCount, long now) {
+            return documentCount > 0
+                    ? new IndexCatalogEntry(true, now, documentCount, now)
+                    : new IndexCatalogEntry(true, now, -1, 0);
+        }
 
-        // 限制长度
-        if (normalized.length() > 255) {
-            normalized = normalized.substring(0, 255);
+        boolean isExistsFresh(Duration ttl) {
+            return existsCheckedAt > 0 && System.currentTimeMillis() - existsCheckedAt < ttl.toMillis();
         }
 
-        if (normalized.isEmpty()) {
-            throw new IllegalArgumentException("Invalid index name: " + indexName);
+        boolean isCountFresh(Duration ttl) {
+            return countCheckedAt > 0 && System.currentTimeMillis() - countCheckedAt < ttl.toMillis();
         }
+    }
+
+    @Override
+    public Map<String, VectorStore> getAllVectorStores() {
+        return new HashMap<>(vectorStoreMap);
+    }
 
-        return normalized;
+    /**
+     * 规范化 index 名称，见 {@link IndexNames#normalize(String)}
+     */
+    public static String normalizeIndexName(String indexName) {
+        return IndexNames.normalize(indexName);
     }
 }
@@ -0,0 +1,135 @@
+package com.ws16289.daxi.benchmark;
+
+import com.ws16289.daxi.service.impl.ai.AiQueryServiceImpl;
+import com.ws16289.daxi.service.impl.ai.OpenSearchStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * advanceRag Advisor 构建开销基准测试
+ * 与 RagQueryBenchmark 使用同一套桩容器，直接调用 AiQueryServiceImpl 中 advanceRag 使用的
+ * buildAdvanceRagAdvisor 和 getOrBuildAdvisor（私有方法，通过 MethodHandle 调用），
+ * 对比每个请求重新构建 Advisor 与按 (vectorStoreName, 流水线变体) 复用预构建 Advisor 的耗时和分配量。
+ * 构建包含 advanceRag 的全部阶段：超时保护、请求合并、检索指标和 QueryAugmenter
+ *
+ * 运行方式（需开启 GC profiler 查看每次调用的分配字节数 gc.alloc.rate.norm）：
+ * java -jar benchmarks.jar AdvisorPipelineBenchmark -prof gc
+ * 实测结果见 AdvisorPipelineBenchmark-results.md
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdvisorPipelineBenchmark {
+
+    private static final String INDEX = "benchmark-index";
+
+    private AnnotationConfigApplicationContext context;
+    private AiQueryServiceImpl queryService;
+    private VectorStore vectorStore;
+    private String variant;
+
+    private MethodHandle buildAdvanceRagAdvisor;
+    private MethodHandle getOrBuildAdvisor;
+    private Supplier<BaseAdvisor> builder;
+
+    @Setup
+    public void setup() throws Throwable {
+        EmbeddingModel embeddingModel = new StubEmbeddingModel(384);
+        vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        ChatModel chatModel = new StubChatModel();
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties()));
+        context.registerBean(ChatModel.class, () -> chatModel);
+        context.registerBean(EmbeddingModel.class, () -> embeddingModel);
+        context.registerBean(OpenSearchStoreService.class, () -> RagQueryBenchmark.storeService(vectorStore, 1));
+        context.register(RagQueryBenchmark.StubConfig.class);
+        context.refresh();
+        queryService = context.getBean(AiQueryServiceImpl.class);
+
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(AiQueryServiceImpl.class, MethodHandles.lookup());
+        buildAdvanceRagAdvisor = lookup.findVirtual(AiQueryServiceImpl.class, "buildAdvanceRagAdvisor",
+                MethodType.methodType(BaseAdvisor.class, String.class, VectorStore.class));
+        getOrBuildAdvisor = lookup.findVirtual(AiQueryServiceImpl.class, "getOrBuildAdvisor",
+                MethodType.methodType(BaseAdvisor.class, String.class, String.class, VectorStore.class, Supplier.class));
+        variant = (String) lookup.findVirtual(AiQueryServiceImpl.class, "advanceRagVariant",
+                MethodType.methodType(String.class)).invoke(queryService);
+        builder = () -> {
+            try {
+                return buildAdvisor();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * 优化前：每个请求创建 Transformer、Expander、Retriever 和 Advisor
+     */
+    @Benchmark
+    public BaseAdvisor buildPerRequest() throws Throwable {
+        return buildAdvisor();
+    }
+
+    /**
+     * 优化后：advanceRag 实际使用的查找路径，按 (vectorStoreName, 流水线变体) 复用预构建的 Advisor
+     */
+    @Benchmark
+    public BaseAdvisor prebuiltLookup() throws Throwable {
+        return (BaseAdvisor) getOrBuildAdvisor.invoke(queryService, INDEX, variant, vectorStore, builder);
+    }
+
+    private BaseAdvisor buildAdvisor() throws Throwable {
+        return (BaseAdvisor) buildAdvanceRagAdvisor.invoke(queryService, INDEX, vectorStore);
+    }
+
+    // 开启 advanceRag 的全部阶段，与生产配置的 advance:TERAP 变体一致
+    private static Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("embedding.retrieval.enable-trans", "true");
+        properties.put("embedding.retrieval.filter.enable-expander", "true");
+        properties.put("embedding.retrieval.enable-retriever", "true");
+        properties.put("embedding.retrieval.filter.enable-queryaug", "true");
+        properties.put("embedding.retrieval.filter.enable-postprocessor", "true");
+        properties.put("embedding.retrieval.mmr.enabled", "true");
+        properties.put("embedding.retrieval.filter.validity-window", "false");
+        properties.put("embedding.retrieval.hybrid.create-pipeline", "false");
+        properties.put("rag.answer.cache.enabled", "false");
+        properties.put("rag.transform.cache.redis.enabled", "false");
+        return properties;
+    }
+}
@@ -0,0 +1,309 @@
+package com.ws16289.daxi.benchmark;
+
+import com.ws16289.daxi.config.ai.RagPipelineConfig;
+import com.ws16289.daxi.repository.OpenSearchStoreRepository;
+import com.ws16289.daxi.repository.impl.EmbeddingCache;
+import com.ws16289.daxi.service.impl.ai.AiQueryServiceImpl;
+import com.ws16289.daxi.service.impl.ai.OpenSearchStoreService;
+import com.ws16289.daxi.service.impl.ai.rag.AdaptiveCutoffRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.ContextPacker;
+import com.ws16289.daxi.service.impl.ai.rag.MmrDocumentPostProcessorFactory;
+import com.ws16289.daxi.service.impl.ai.rag.OpenSearchAsyncRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.OpenSearchHybridRetrieverFactory;
+import com.ws16289.daxi.service.impl.ai.rag.ParallelDocumentRetrieval;
+import com.ws16289.daxi.service.impl.ai.rag.QueryTransformationCache;
+import com.ws16289.daxi.service.impl.ai.rag.RagPipelineMetrics;
+import com.ws16289.daxi.service.impl.ai.rag.RagRequestCoalescer;
+import com.ws16289.daxi.service.impl.ai.rag.RagStageGuard;
+import com.ws16289.daxi.service.impl.ai.rag.SemanticAnswerCache;
+import com.ws16289.daxi.service.impl.ai.rag.StreamCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
+import org.springframework.ai.rag.generation.augmentation.QueryAugmenter;
+import org.springframework.ai.rag.preretrieval.query.expansion.MultiQueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.CompressionQueryTransformer;
+import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG 查询链路基准测试
+ * 在进程内启动只包含 AiQueryServiceImpl 及其 RAG 组件的 Spring 容器，外部依赖全部替换为桩：
+ * 确定性的 StubChatModel / StubEmbeddingModel、内存中的 SimpleVectorStore，
+ * OpenSearch 客户端、Redis 和 OpenSearchStoreService 使用 Mockito 桩对象，不需要网络即可运行。
+ * 每个基准方法完整消费一次流式回答，同时输出吞吐量和延迟分位数（SampleTime）
+ *
+ * 运行方式（-prof gc 输出每次调用的分配字节数 gc.alloc.rate.norm）：
+ * java -jar benchmarks.jar RagQueryBenchmark -prof gc
+ *
+ * 语义答案缓存依赖 Redis，固定关闭；transformCache=true 时开启查询转换缓存（仅本地一级缓存），
+ * 用于对比查询改写 / 扩展命中缓存前后的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RagQueryBenchmark {
+
+    private static final String INDEX = "benchmark-index";
+    private static final String MEMORY_ID = "benchmark";
+
+    // 同步调用返回三行，多查询扩展解析为三个查询；查询改写 / 压缩会得到同样的文本
+    private static final String CALL_REPLY = "差旅报销需要提交哪些材料\n出差住宿费的报销标准是多少\n报销审批流程需要几天";
+    private static final String ANSWER = "根据参考文档，差旅报销需要提交发票原件、行程单和审批单，住宿费按城市等级执行不同标准，审批一般在三个工作日内完成。";
+
+    private static final String[] QUERIES = {
+            "差旅报销需要哪些材料",
+            "住宿费报销标准",
+            "报销审批要多久",
+            "出差补贴怎么计算",
+            "发票丢失怎么办",
+            "跨年度的费用如何报销",
+            "国外出差的汇率怎么算",
+            "报销被退回后如何处理"
+    };
+
+    @Param({"1000"})
+    private int documentCount;
+
+    @Param({"384"})
+    private int dimensions;
+
+    @Param({"false", "true"})
+    private boolean transformCache;
+
+    private AnnotationConfigApplicationContext context;
+    private AiQueryServiceImpl queryService;
+    private ChatClient chatClient;
+    private int next;
+
+    @Setup
+    public void setup() {
+        EmbeddingModel embeddingModel = new StubEmbeddingModel(dimensions);
+        SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        vectorStore.add(documents(documentCount));
+
+        ChatModel chatModel = new StubChatModel(CALL_REPLY, ANSWER, 2);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties()));
+        context.registerBean(ChatModel.class, () -> chatModel);
+        context.registerBean(EmbeddingModel.class, () -> embeddingModel);
+        context.registerBean(OpenSearchStoreService.class, () -> storeService(vectorStore, documentCount));
+        context.register(StubConfig.class);
+        context.refresh();
+
+        queryService = context.getBean(AiQueryServiceImpl.class);
+        chatClient = ChatClient.builder(chatModel).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void advanceRag(Blackhole blackhole) {
+        drain(queryService.advanceRag(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void queryWithRewriteTransformer(Blackhole blackhole) {
+        drain(queryService.queryWithRewriteTransformer(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void queryWithCompressionTransformer(Blackhole blackhole) {
+        drain(queryService.queryWithCompressionTransformer(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void queryWithRewriteThenCompression(Blackhole blackhole) {
+        drain(queryService.queryWithRewriteThenCompression(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void queryQueryExpander(Blackhole blackhole) {
+        drain(queryService.queryQueryExpander(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void queryWithQueryAugmenter(Blackhole blackhole) {
+        drain(queryService.queryWithQueryAugmenter(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void federatedQuery(Blackhole blackhole) {
+        drain(queryService.federatedQuery(chatClient, List.of(INDEX), nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    @Benchmark
+    public void allInOneQuery(Blackhole blackhole) {
+        drain(queryService.allInOneQuery(chatClient, INDEX, nextQuery(), MEMORY_ID), blackhole);
+    }
+
+    private void drain(Flux<String> answer, Blackhole blackhole) {
+        answer.doOnNext(blackhole::consume).blockLast();
+    }
+
+    // 轮换查询，避免请求合并等按查询文本去重的优化掩盖实际开销
+    private String nextQuery() {
+        String query = QUERIES[next];
+        next = (next + 1) % QUERIES.length;
+        return query;
+    }
+
+    private Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("embedding.retrieval.enable-trans", "true");
+        properties.put("embedding.retrieval.filter.enable-expander", "true");
+        properties.put("embedding.retrieval.enable-retriever", "true");
+        properties.put("embedding.retrieval.filter.enable-queryaug", "true");
+        // 桩向量之间的余弦相似度集中在 0 附近，阈值为 0 时才能稳定取回 topK 个文档
+        properties.put("embedding.retrieval.similarity-threshold", "0.0");
+        // SimpleVectorStore 中的文档没有生效时间字段
+        properties.put("embedding.retrieval.filter.validity-window", "false");
+        properties.put("embedding.retrieval.hybrid.create-pipeline", "false");
+        properties.put("rag.answer.cache.enabled", "false");
+        properties.put("rag.transform.cache.enabled", String.valueOf(transformCache));
+        properties.put("rag.transform.cache.redis.enabled", "false");
+        return properties;
+    }
+
+    private static List<Document> documents(int count) {
+        String[] topics = {"差旅报销", "住宿标准", "审批流程", "出差补贴", "发票管理", "费用归属", "外币结算", "退单处理"};
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String topic = topics[i % topics.length];
+            documents.add(new Document("doc-" + i,
+                    topic + "制度第" + (i + 1) + "条：员工办理" + topic + "相关事项时，应按公司财务制度提交完整材料并经部门负责人审批。",
+                    Map.of("category", topic, "is_active", true)));
+        }
+        return documents;
+    }
+
+    /**
+     * OpenSearchStoreService 桩：固定返回内存中的 VectorStore，索引总是存在且有内容
+     */
+    static OpenSearchStoreService storeService(VectorStore vectorStore, int documentCount) {
+        return Mockito.mock(OpenSearchStoreService.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "getVectorStore" -> vectorStore;
+            case "indexExists" -> true;
+            case "getDocumentCount" -> {
+                Class<?> type = invocation.getMethod().getReturnType();
+                yield type == int.class || type == Integer.class ? (Object) documentCount : (Object) (long) documentCount;
+            }
+            default -> Mockito.RETURNS_DEFAULTS.answer(invocation);
+        });
+    }
+
+    /**
+     * 只注册查询链路用到的组件，其余依赖使用桩对象，AdvisorPipelineBenchmark 复用同一配置
+     */
+    @Configuration
+    @EnableConfigurationProperties
+    @Import({RagPipelineConfig.class, AiQueryServiceImpl.class, QueryTransformationCache.class,
+            ParallelDocumentRetrieval.class, ContextPacker.class, OpenSearchHybridRetrieverFactory.class,
+            RagRequestCoalescer.class, RagPipelineMetrics.class, SemanticAnswerCache.class, RagStageGuard.class,
+            MmrDocumentPostProcessorFactory.class, StreamCoalescer.class, AdaptiveCutoffRetrieverFactory.class,
+            OpenSearchAsyncRetrieverFactory.class, EmbeddingCache.class})
+    static class StubConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public ChatMemory chatMemory() {
+            return MessageWindowChatMemory.builder().build();
+        }
+
+        // 查询转换缓存和语义答案缓存在基准测试中不使用 Redis
+        @Bean
+        public StringRedisTemplate stringRedisTemplate() {
+            return Mockito.mock(StringRedisTemplate.class);
+        }
+
+        // 检索模式为 vector、未开启 MMR 和异步检索，只构建 Advisor 时 OpenSearch 客户端不会被调用
+        @Bean
+        public OpenSearchClient openSearchClient() {
+            return Mockito.mock(OpenSearchClient.class);
+        }
+
+        @Bean
+        public OpenSearchStoreRepository openSearchStoreRepository() {
+            return Mockito.mock(OpenSearchStoreRepository.class);
+        }
+
+        @Bean
+        public RewriteQueryTransformer rewriteQueryTransformer(ChatModel chatModel) {
+            return RewriteQueryTransformer.builder()
+                    .chatClientBuilder(ChatClient.builder(chatModel))
+                    .build();
+        }
+
+        @Bean
+        public CompressionQueryTransformer compressionQueryTransformer(ChatModel chatModel) {
+            return CompressionQueryTransformer.builder()
+                    .chatClientBuilder(ChatClient.builder(chatModel))
+                    .build();
+        }
+
+        @Bean
+        public MultiQueryExpander multiQueryExpander(ChatModel chatModel) {
+            return MultiQueryExpander.builder()
+                    .chatClientBuilder(ChatClient.builder(chatModel))
+                    .numberOfQueries(3)
+                    .includeOriginal(true)
+                    .build();
+        }
+
+        @Bean
+        public QueryAugmenter queryAugmenter() {
+            return ContextualQueryAugmenter.builder()
+                    .allowEmptyContext(true)
+                    .build();
+        }
+    }
+}
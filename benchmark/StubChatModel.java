@@ -0,0 +1,58 @@
+package com.ws16289.daxi.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用 ChatModel
+ * 不访问网络，总是返回固定回答；流式调用按固定长度切分为多个 Token。
+ * 同步调用（查询改写、多查询扩展）与流式调用（生成回答）可以返回不同的内容
+ */
+public class StubChatModel implements ChatModel {
+
+    private final String callReply;
+    private final String reply;
+    private final int tokenLength;
+
+    public StubChatModel(String callReply, String reply, int tokenLength) {
+        this.callReply = callReply;
+        this.reply = reply;
+        this.tokenLength = tokenLength;
+    }
+
+    public StubChatModel(String reply, int tokenLength) {
+        this(reply, reply, tokenLength);
+    }
+
+    public StubChatModel() {
+        this("这是一个用于基准测试的固定回答，内容与问题无关。", 2);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(callReply))));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        List<ChatResponse> chunks = new ArrayList<>();
+        for (int i = 0; i < reply.length(); i += tokenLength) {
+            String token = reply.substring(i, Math.min(reply.length(), i + tokenLength));
+            chunks.add(new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().model("stub-chat").build();
+    }
+}
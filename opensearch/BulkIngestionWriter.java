@@ -0,0 +1,248 @@
+package com.ws16289.daxi.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量写入向量库
+ * 文档按 batch-size 分批，每批先批量计算 embedding（文本未变化的分块复用 {@link ChunkEmbeddingStore} 中的向量）再发送一次 bulk 请求；
+ * 所有写入共享 concurrency 个线程，同时进行的 embedding / bulk 请求数不超过 concurrency。
+ * 失败的批次单独重试（bulk 部分失败时只重试失败的文档，已计算的向量复用），
+ * 文档结构与 OpenSearchVectorStore 写入的一致：id / content / metadata / embedding
+ */
+@Slf4j
+@Component
+public class BulkIngestionWriter {
+
+    @Autowired
+    private OpenSearchClient openSearchClient;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private OpenSearchStoreRepositoryImpl openSearchStoreRepository;
+
+    @Autowired
+    private ChunkEmbeddingStore chunkEmbeddingStore;
+
+    @Value("${opensearch.ingest.batch-size:64}")
+    private int batchSize;
+
+    @Value("${opensearch.ingest.concurrency:4}")
+    private int concurrency;
+
+    @Value("${opensearch.ingest.max-attempts:3}")
+    private int maxAttempts;
+
+    // 第 n 次重试前等待 retry-backoff * 2^(n-1)
+    @Value("${opensearch.ingest.retry-backoff:1s}")
+    private Duration retryBackoff;
+
+    private ExecutorService ingestionExecutor;
+
+    /**
+     * 单个批次的写入结果
+     *
+     * @param batchIndex 批次序号，从 0 开始
+     * @param size 批次文档数
+     * @param succeeded 成功写入的文档数
+     * @param attempts 尝试次数
+     * @param error 最后一次失败原因，全部成功时为 null
+     */
+    public record BatchResult(int batchIndex, int size, int succeeded, int attempts, String error) {
+    }
+
+    /**
+     * 一次写入的汇总结果
+     */
+    public record IngestionResult(String indexName, int total, int succeeded, List<BatchResult> batches) {
+
+        public int failed() {
+            return total - succeeded;
+        }
+
+        public boolean isSuccess() {
+            return succeeded == total;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ingestionExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(r, "opensearch-ingest-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("批量写入初始化 - batchSize: {}, concurrency: {}, maxAttempts: {}", batchSize, concurrency, maxAttempts);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ingestionExecutor.shutdownNow();
+    }
+
+    /**
+     * 分批写入文档，阻塞直到所有批次完成
+     *
+     * @param indexName 索引名称
+     * @param documents 待写入的文档
+     * @return 写入结果，包含每个批次的结果
+     */
+    public IngestionResult write(String indexName, List<Document> documents) throws InterruptedException {
+        return write(indexName, documents, embeddingModel);
+    }
+
+    /**
+     * 使用指定的 EmbeddingModel 分批写入文档，用于重建索引时以新模型重新计算向量
+     *
+     * @param indexName 索引名称
+     * @param documents 待写入的文档
+     * @param model 计算 embedding 的模型
+     * @return 写入结果，包含每个批次的结果
+     */
+    public IngestionResult write(String indexName, List<Document> documents, EmbeddingModel model)
+            throws InterruptedException {
+        String normalizedName = OpenSearchStoreRepositoryImpl.normalizeIndexName(indexName);
+        int size = Math.max(1, batchSize);
+
+        List<Future<BatchResult>> futures = new ArrayList<>();
+        for (int from = 0, batchIndex = 0; from < documents.size(); from += size, batchIndex++) {
+            List<Document> batch = documents.subList(from, Math.min(documents.size(), from + size));
+            int index = batchIndex;
+            futures.add(ingestionExecutor.submit(() -> writeBatch(normalizedName, index, batch, model)));
+        }
+
+        List<BatchResult> results = new ArrayList<>(futures.size());
+        int succeeded = 0;
+        try {
+            for (Future<BatchResult> future : futures) {
+                BatchResult result = future.get();
+                results.add(result);
+                succeeded += result.succeeded();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            // writeBatch 内部捕获所有异常，这里不会出现
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (succeeded > 0) {
+                openSearchStoreRepository.notifyIndexWritten(normalizedName);
+            }
+        }
+
+        IngestionResult result = new IngestionResult(normalizedName, documents.size(), succeeded, results);
+        log.info("批量写入完成 - index: {}, 文档: {}, 成功: {}, 批次: {}",
+                normalizedName, result.total(), result.succeeded(), results.size());
+        return result;
+    }
+
+    private BatchResult writeBatch(String indexName, int batchIndex, List<Document> batch, EmbeddingModel model) {
+        List<float[]> embeddings = null;
+        // 尚未成功写入的文档在 batch 中的位置
+        List<Integer> pending = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            pending.add(i);
+        }
+        String error = null;
+        int attempt = 0;
+        while (!pending.isEmpty() && attempt < maxAttempts) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(retryBackoff.toMillis() << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error = "interrupted";
+                    break;
+                }
+            }
+            attempt++;
+            try {
+                if (embeddings == null) {
+                    List<String> texts = batch.stream().map(Document::getText).toList();
+                    // 分块向量存储按默认模型的 model-id 区分，其它模型（如重建索引时指定的新模型）直接计算
+                    embeddings = model == embeddingModel ? chunkEmbeddingStore.embed(texts, model) : model.embed(texts);
+                }
+                pending = bulk(indexName, batch, embeddings, pending);
+                if (!pending.isEmpty()) {
+                    error = pending.size() + " documents rejected by bulk request";
+                }
+            } catch (Exception e) {
+                error = e.getMessage();
+                log.warn("批次写入失败 - index: {}, batch: {}, attempt: {}, error: {}",
+                        indexName, batchIndex, attempt, e.getMessage());
+            }
+        }
+
+        int succeeded = batch.size() - pending.size();
+        if (pending.isEmpty()) {
+            log.debug("批次写入成功 - index: {}, batch: {}, size: {}, attempts: {}",
+                    indexName, batchIndex, batch.size(), attempt);
+            return new BatchResult(batchIndex, batch.size(), succeeded, attempt, null);
+        }
+        log.error("批次写入失败 - index: {}, batch: {}, 失败文档: {}/{}, error: {}",
+                indexName, batchIndex, pending.size(), batch.size(), error);
+        return new BatchResult(batchIndex, batch.size(), succeeded, attempt, error);
+    }
+
+    /**
+     * 发送 bulk 请求
+     *
+     * @return 写入失败的文档位置
+     */
+    private List<Integer> bulk(String indexName, List<Document> batch, List<float[]> embeddings,
+                               List<Integer> pending) throws IOException {
+        List<BulkOperation> operations = new ArrayList<>(pending.size());
+        for (int position : pending) {
+            Document document = batch.get(position);
+            Map<String, Object> source = new HashMap<>();
+            source.put("id", document.getId());
+            source.put("content", document.getText());
+            source.put("metadata", document.getMetadata());
+            source.put("embedding", embeddings.get(position));
+            operations.add(BulkOperation.of(op -> op.index(idx -> idx
+                    .index(indexName)
+                    .id(document.getId())
+                    .document(source))));
+        }
+
+        BulkResponse response = openSearchClient.bulk(b -> b.operations(operations));
+        if (!response.errors()) {
+            return List.of();
+        }
+        // bulk 响应中的条目与请求顺序一致
+        List<Integer> failed = new ArrayList<>();
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).error() != null) {
+                failed.add(pending.get(i));
+            }
+        }
+        return failed;
+    }
+}
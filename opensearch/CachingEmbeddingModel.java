@@ -0,0 +1,78 @@
+package com.ws16289.daxi.repository.impl;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带查询向量缓存的 EmbeddingModel 装饰器
+ * 只缓存按文本计算的向量（检索时的查询向量）；文档写入走 {@link #call(EmbeddingRequest)} / {@link #embed(Document)}，
+ * 直接委托给原 EmbeddingModel。缓存中的数组不对外暴露，每次返回副本
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+
+    CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] cached = cache.get(text);
+        if (cached == null) {
+            cached = cache.load(text, () -> delegate.embed(text));
+        }
+        return cached.clone();
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的文本去重后一次批量计算
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            float[] cached = cache.get(texts.get(i));
+            if (cached != null) {
+                vectors[i] = cached.clone();
+            } else {
+                misses.computeIfAbsent(texts.get(i), text -> new ArrayList<>()).add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<String> missTexts = new ArrayList<>(misses.keySet());
+            List<float[]> loaded = delegate.embed(missTexts);
+            for (int i = 0; i < missTexts.size(); i++) {
+                float[] vector = loaded.get(i);
+                cache.put(missTexts.get(i), vector);
+                for (int index : misses.get(missTexts.get(i))) {
+                    vectors[index] = vector.clone();
+                }
+            }
+        }
+        return List.of(vectors);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,178 @@
+package com.ws16289.daxi.repository.impl;
+
+import com.ws16289.daxi.util.VectorCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文档分块向量存储
+ * 键为 model-id + 分块文本的 SHA-256，值为 little-endian float16 编码后 Base64 存储（1536 维约 4KB），
+ * 批量写入前按文本查找已计算过的向量，只对未命中的分块调用 EmbeddingModel。
+ * 重新上传小幅修改的文档、每周全量刷新时大部分分块文本不变，可以直接复用向量。
+ * 开启时必须配置 model-id，读取时维度与模型不一致的向量视为未命中
+ */
+@Slf4j
+@Component
+public class ChunkEmbeddingStore {
+
+    public static final String REQUEST_COUNTER = "embedding.chunk-store.requests";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${embedding.chunk-store.enabled:true}")
+    private boolean enabled;
+
+    // Embedding 模型标识，开启时必须配置，更换模型后必须修改，否则会复用旧模型计算的向量
+    @Value("${embedding.chunk-store.model-id:}")
+    private String modelId;
+
+    @Value("${embedding.chunk-store.ttl:30d}")
+    private Duration ttl;
+
+    @Value("${embedding.chunk-store.prefix:embedding:chunk:}")
+    private String keyPrefix;
+
+    @PostConstruct
+    public void init() {
+        if (enabled && modelId.isBlank()) {
+            throw new IllegalStateException(
+                    "embedding.chunk-store.model-id is required when embedding.chunk-store.enabled=true");
+        }
+        log.info("分块向量存储初始化 - enabled: {}, modelId: {}, ttl: {}", enabled, modelId, ttl);
+    }
+
+    /**
+     * 计算一批分块的向量，已存储的直接复用，未命中的一次批量调用 EmbeddingModel 后写入存储
+     *
+     * @param texts 分块文本
+     * @param model 未命中时使用的模型，必须是 model-id 对应的模型
+     * @return 与 texts 顺序一致的向量
+     */
+    public List<float[]> embed(List<String> texts, EmbeddingModel model) {
+        if (!enabled || texts.isEmpty()) {
+            return model.embed(texts);
+        }
+        List<String> keys = texts.stream().map(this::buildKey).toList();
+        List<float[]> vectors = new ArrayList<>(read(keys, model.dimensions()));
+
+        // 未命中的文本去重后计算，同一批次中的重复分块只计算一次
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (vectors.get(i) == null) {
+                missing.putIfAbsent(keys.get(i), texts.get(i));
+            }
+        }
+        counter("hit").increment(texts.size() - missing.size());
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+        counter("miss").increment(missing.size());
+
+        List<float[]> computed = model.embed(new ArrayList<>(missing.values()));
+        Map<String, float[]> computedByKey = new LinkedHashMap<>();
+        int position = 0;
+        for (String key : missing.keySet()) {
+            computedByKey.put(key, computed.get(position++));
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            if (vectors.get(i) == null) {
+                vectors.set(i, computedByKey.get(keys.get(i)));
+            }
+        }
+        write(computedByKey);
+        log.debug("分块向量 - 总数: {}, 复用: {}, 计算: {}", texts.size(), texts.size() - missing.size(), missing.size());
+        return vectors;
+    }
+
+    /**
+     * 批量读取已存储的向量，维度与当前模型不一致的（model-id 未随模型更换而修改）按未命中处理
+     */
+    private List<float[]> read(List<String> keys, int dimensions) {
+        List<float[]> vectors = new ArrayList<>(keys.size());
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            int mismatched = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                String value = values != null ? values.get(i) : null;
+                float[] vector = value == null ? null : VectorCodec.decodeHalf(value);
+                if (vector != null && vector.length != dimensions) {
+                    mismatched++;
+                    vector = null;
+                }
+                vectors.add(vector);
+            }
+            if (mismatched > 0) {
+                counter("dimension-mismatch").increment(mismatched);
+                log.warn("分块向量维度与模型不一致，重新计算 - modelId: {}, 模型维度: {}, 数量: {}", modelId, dimensions, mismatched);
+            }
+        } catch (Exception e) {
+            // 存储不可用时全部重新计算
+            log.warn("读取分块向量失败: {}", e.getMessage());
+            vectors.clear();
+            keys.forEach(key -> vectors.add(null));
+        }
+        return vectors;
+    }
+
+    private void write(Map<String, float[]> vectors) {
+        try {
+            Expiration expiration = Expiration.seconds(ttl.toSeconds());
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                vectors.forEach((key, vector) -> {
+                    if (vector != null && vector.length > 0) {
+                        connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8),
+                                VectorCodec.encodeHalf(vector).getBytes(StandardCharsets.UTF_8),
+                                expiration, RedisStringCommands.SetOption.upsert());
+                    }
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入分块向量失败: {}", e.getMessage());
+        }
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder(REQUEST_COUNTER)
+                .description("分块向量存储访问次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private String buildKey(String text) {
+        return keyPrefix + modelId + ":" + sha256(text == null ? "" : text);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.ws16289.daxi.repository.impl;
+
+import com.ws16289.daxi.util.LocalTtlCache;
+import com.ws16289.daxi.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 查询向量缓存
+ * 键为 namespace + 文本的 SHA-256；L1 为本地 LRU + TTL 缓存，直接保存 float[]，
+ * L2 为可选的 Redis 缓存，向量按 little-endian float32 编码后 Base64 存储（1536 维约 8KB）。
+ * 通过 {@link #wrap(EmbeddingModel)} 包装 EmbeddingModel，所有包装实例共享同一份缓存
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    public static final String REQUEST_COUNTER = "embedding.cache.requests";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean enabled;
+
+    // 更换 Embedding 模型后必须修改，避免读到旧模型生成的向量
+    @Value("${embedding.cache.namespace:default}")
+    private String namespace;
+
+    // 1536 维向量约 6KB，默认最多占用约 30MB
+    @Value("${embedding.cache.local.max-size:5000}")
+    private int localMaxSize;
+
+    @Value("${embedding.cache.local.ttl:24h}")
+    private Duration localTtl;
+
+    @Value("${embedding.cache.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${embedding.cache.redis.ttl:7d}")
+    private Duration redisTtl;
+
+    @Value("${embedding.cache.prefix:embedding:}")
+    private String cachePrefix;
+
+    private LocalTtlCache<String, float[]> localCache;
+
+    // 相同文本的并发请求只调用一次 EmbeddingModel
+    private final SingleFlight<String, float[]> inFlightLoads = new SingleFlight<>();
+
+    @PostConstruct
+    public void init() {
+        this.localCache = new LocalTtlCache<>(localMaxSize, localTtl);
+        log.info("查询向量缓存初始化 - enabled: {}, namespace: {}, localMaxSize: {}, redis: {}",
+                enabled, namespace, localMaxSize, redisEnabled);
+    }
+
+    /**
+     * 为 EmbeddingModel 添加查询向量缓存，未开启时返回原对象
+     */
+    public EmbeddingModel wrap(EmbeddingModel delegate) {
+        if (!enabled || delegate instanceof CachingEmbeddingModel) {
+            return delegate;
+        }
+        return new CachingEmbeddingModel(delegate, this);
+    }
+
+    /**
+     * 读取缓存，依次查询 L1、L2，L2 命中时回填 L1
+     *
+     * @return 缓存的向量，未命中时返回 null；返回的数组为缓存内部对象，调用方不能修改
+     */
+    float[] get(String text) {
+        String key = buildKey(text);
+        float[] cached = localCache.get(key);
+        if (cached != null) {
+            counter("l1_hit").increment();
+            return cached;
+        }
+        cached = readRedis(key);
+        if (cached != null) {
+            counter("l2_hit").increment();
+            localCache.put(key, cached);
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * 未命中时计算向量并写入缓存，相同文本的并发请求共享同一次计算
+     */
+    float[] load(String text, Supplier<float[]> loader) {
+        String key = buildKey(text);
+        SingleFlight.Result<float[]> result = inFlightLoads.execute(key, () -> {
+            float[] loaded = loader.get();
+            store(key, loaded);
+            return loaded;
+        });
+        counter(result.shared() ? "shared" : "miss").increment();
+        return result.value();
+    }
+
+    /**
+     * 批量计算的结果写入缓存
+     */
+    void put(String text, float[] vector) {
+        counter("miss").increment();
+        store(buildKey(text), vector);
+    }
+
+    private void store(String key, float[] vector) {
+        if (vector == null || vector.length == 0) {
+            return;
+        }
+        localCache.put(key, vector);
+        writeRedis(key, vector);
+    }
+
+    private float[] readRedis(String key) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(key);
+            return value == null ? null : decode(value);
+        } catch (Exception e) {
+            log.warn("读取查询向量缓存(Redis)失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, float[] vector) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, encode(vector), redisTtl.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入查询向量缓存(Redis)失败: {}", e.getMessage());
+        }
+    }
+
+    static String encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    static float[] decode(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder(REQUEST_COUNTER)
+                .description("查询向量缓存访问次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private String buildKey(String text) {
+        return cachePrefix + namespace + ":" + sha256(text == null ? "" : text);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,768 @@
+package com.ws16289.daxi.repository.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch._types.SortOrder;
+import org.opensearch.client.opensearch._types.Time;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.SearchResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.opensearch.core.search.Pit;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 基于别名的蓝绿重建索引
+ * 后台按 kNN 模板创建新的物理索引 {alias}__v{时间戳}，用 PIT + search_after 扫描旧索引的文本和 metadata，
+ * 经 {@link BulkIngestionWriter} 按页重新计算向量并写入新索引（按 max-docs-per-second 限速），
+ * 全量复制完成后禁止写入旧索引（index.blocks.write），再扫描一遍与旧索引对账：补齐复制期间新写入的文档、
+ * 重新复制内容或 metadata 有变化的文档，并删除新索引中已不存在于旧索引的文档，两个索引的文档数一致后通过一次 _aliases 请求原子地把别名切换到新索引。
+ * 业务侧始终使用别名访问，切换过程中查询不中断；只有补齐扫描期间写入会被拒绝，失败或中断时解除写入限制。
+ *
+ * 进度保存在 Redis 中（每页更新一次），进程崩溃后从检查点继续：
+ * PIT 未过期时从 search_after 位置继续扫描，已过期时重新扫描，已存在于新索引中的文档通过 mget 跳过，不重复计算向量。
+ * 多个实例共享同一份检查点，同一别名的重建通过 Redis 锁（SET NX + TTL，执行期间定时续期）保证只有一个实例在执行，
+ * 持有锁的实例宕机后锁在 TTL 到期时释放，其他实例重启或再次发起时从检查点继续
+ */
+@Slf4j
+@Component
+public class IndexMigrator {
+
+    private static final Pattern PHYSICAL_INDEX_NAME = Pattern.compile(".+__v\\d+");
+
+    private static final String STATUS_PREFIX = "opensearch:migration:";
+
+    private static final String ACTIVE_KEY = STATUS_PREFIX + "active";
+
+    private static final String LOCK_PREFIX = STATUS_PREFIX + "lock:";
+
+    // 仅在锁仍归当前持有者时续期或删除，避免误操作其他实例在锁过期后重新获取的锁
+    private static final RedisScript<Long> RENEW_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * 重建进度，同时作为断点续传的检查点
+     */
+    @Data
+    public static class MigrationStatus {
+        private String alias;
+        // 旧的物理索引，首次重建时为与别名同名的索引
+        private String source;
+        private String target;
+        // 目标索引使用的 profile，为空时使用别名对应的 profile
+        private String profile;
+        private State state;
+        // 1：全量复制；2：禁止写入旧索引后对账，补齐新写入、重新复制有变化的文档并删除已删除的文档
+        private int pass;
+        private long total;
+        private long copied;
+        private long skipped;
+        // 对账时删除的文档数
+        private long deleted;
+        private String pitId;
+        private List<String> searchAfter;
+        private String error;
+        private long startedAt;
+        private long updatedAt;
+    }
+
+    @Autowired
+    private OpenSearchClient openSearchClient;
+
+    @Autowired
+    private OpenSearchStoreRepositoryImpl openSearchStoreRepository;
+
+    @Autowired
+    private BulkIngestionWriter bulkIngestionWriter;
+
+    @Autowired
+    private KnnIndexTemplate knnIndexTemplate;
+
+    @Autowired
+    private KnnIndexProperties knnIndexProperties;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    // 每页扫描的文档数
+    @Value("${opensearch.migration.page-size:500}")
+    private int pageSize;
+
+    // 重新计算向量的限速，0 表示不限速
+    @Value("${opensearch.migration.max-docs-per-second:100}")
+    private int maxDocsPerSecond;
+
+    @Value("${opensearch.migration.pit-keep-alive:10m}")
+    private String pitKeepAlive;
+
+    // 重新计算向量使用的 EmbeddingModel Bean 名称，为空时使用默认模型；
+    // 查询侧始终使用默认模型计算查询向量，指定的 Bean 必须就是默认模型，否则切换别名后查询向量与文档向量不在同一空间。
+    // 更换模型的顺序：先把新模型配置为默认 EmbeddingModel 并发布，再执行重建
+    @Value("${opensearch.migration.embedding-model:}")
+    private String embeddingModelBean;
+
+    // 切换别名后是否删除旧的物理索引，保留时可以把别名切回旧索引回滚
+    @Value("${opensearch.migration.delete-source:false}")
+    private boolean deleteSource;
+
+    // 重建锁的过期时间，执行期间每 1/3 TTL 续期一次
+    @Value("${opensearch.migration.lock-ttl:60s}")
+    private Duration lockTtl;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 当前进程中正在执行的重建
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    // 当前进程持有的重建锁，alias -> 锁的持有者标识
+    private final Map<String, String> heldLocks = new ConcurrentHashMap<>();
+
+    private ExecutorService migrationExecutor;
+
+    private ScheduledExecutorService lockRenewer;
+
+    @PostConstruct
+    public void init() {
+        migrationExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "opensearch-index-migrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lockRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "opensearch-migration-lock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long renewMillis = Math.max(lockTtl.toMillis() / 3, 1000);
+        lockRenewer.scheduleAtFixedRate(this::renewLocks, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        migrationExecutor.shutdownNow();
+        lockRenewer.shutdownNow();
+        // 中断的重建检查点保持 RUNNING，释放锁后其他实例可以立即继续
+        heldLocks.keySet().forEach(this::releaseLock);
+    }
+
+    /**
+     * 是否为重建索引创建的物理索引名称
+     */
+    public static boolean isPhysicalIndexName(String indexName) {
+        return PHYSICAL_INDEX_NAME.matcher(indexName).matches();
+    }
+
+    /**
+     * 启动时继续上次未完成的重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeMigrations() {
+        Set<String> aliases = Optional.ofNullable(redisTemplate.opsForSet().members(ACTIVE_KEY)).orElse(Set.of());
+        for (String alias : aliases) {
+            if (running.contains(alias) || !acquireLock(alias)) {
+                log.info("重建索引由其他实例执行，跳过 - alias: {}", alias);
+                continue;
+            }
+            // 获取锁之后再读取检查点，其他实例可能已经完成
+            Optional<MigrationStatus> resumable = loadStatus(alias).filter(status -> status.getState() == State.RUNNING);
+            if (resumable.isEmpty()) {
+                releaseLock(alias);
+                continue;
+            }
+            MigrationStatus status = resumable.get();
+            log.info("继续重建索引 - alias: {}, target: {}, 已复制: {}/{}",
+                    alias, status.getTarget(), status.getCopied(), status.getTotal());
+            submit(status);
+        }
+    }
+
+    /**
+     * 开始重建索引；存在未完成（运行中断或失败）的重建时从检查点继续
+     *
+     * @param indexName 业务使用的索引名称，重建完成后成为指向新物理索引的别名
+     * @param profile 目标索引使用的 profile，为空时使用索引名称对应的 profile
+     * @return 重建进度
+     */
+    public MigrationStatus startMigration(String indexName, String profile) throws IOException {
+        String alias = OpenSearchStoreRepositoryImpl.normalizeIndexName(indexName);
+        if (running.contains(alias)) {
+            throw new IllegalStateException("Migration already running for index: " + alias);
+        }
+        // 配置的模型与查询侧不一致时在修改任何索引之前失败
+        resolveModel();
+        if (!acquireLock(alias)) {
+            throw new IllegalStateException("Migration already running on another instance for index: " + alias);
+        }
+        try {
+            return startLocked(alias, profile);
+        } catch (IOException | RuntimeException e) {
+            releaseLock(alias);
+            throw e;
+        }
+    }
+
+    private MigrationStatus startLocked(String alias, String profile) throws IOException {
+        Optional<MigrationStatus> existing = loadStatus(alias).filter(status -> status.getState() != State.COMPLETED);
+        if (existing.isPresent()) {
+            MigrationStatus status = existing.get();
+            status.setState(State.RUNNING);
+            status.setError(null);
+            saveStatus(status);
+            log.info("从检查点继续重建索引 - alias: {}, target: {}, pass: {}", alias, status.getTarget(), status.getPass());
+            submit(status);
+            return status;
+        }
+
+        MigrationStatus status = new MigrationStatus();
+        status.setAlias(alias);
+        status.setSource(resolveSource(alias));
+        status.setTarget(alias + "__v" + System.currentTimeMillis());
+        status.setProfile(profile);
+        status.setState(State.RUNNING);
+        status.setPass(1);
+        status.setTotal(openSearchClient.count(c -> c.index(status.getSource())).count());
+        status.setStartedAt(System.currentTimeMillis());
+        saveStatus(status);
+        redisTemplate.opsForSet().add(ACTIVE_KEY, alias);
+        log.info("开始重建索引 - alias: {}, source: {}, target: {}, 文档: {}",
+                alias, status.getSource(), status.getTarget(), status.getTotal());
+        submit(status);
+        return status;
+    }
+
+    /**
+     * 查询重建进度
+     */
+    public Optional<MigrationStatus> getStatus(String indexName) {
+        return loadStatus(OpenSearchStoreRepositoryImpl.normalizeIndexName(indexName));
+    }
+
+    /**
+     * 提交重建任务，调用方已持有该别名的重建锁，任务结束时释放
+     */
+    private void submit(MigrationStatus status) {
+        if (!running.add(status.getAlias())) {
+            return;
+        }
+        migrationExecutor.submit(() -> {
+            try {
+                migrate(status);
+            } finally {
+                running.remove(status.getAlias());
+                releaseLock(status.getAlias());
+            }
+        });
+    }
+
+    private boolean acquireLock(String alias) {
+        String owner = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + alias, owner, lockTtl))) {
+            return false;
+        }
+        heldLocks.put(alias, owner);
+        return true;
+    }
+
+    private void releaseLock(String alias) {
+        String owner = heldLocks.remove(alias);
+        if (owner == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_LOCK, List.of(LOCK_PREFIX + alias), owner);
+        } catch (Exception e) {
+            // 锁在 TTL 到期后自动释放
+            log.warn("释放重建锁失败 - alias: {}, error: {}", alias, e.getMessage());
+        }
+    }
+
+    /**
+     * 续期当前进程持有的重建锁；锁已过期并被其他实例获取时放弃，执行中的重建在下一页前停止
+     */
+    private void renewLocks() {
+        heldLocks.forEach((alias, owner) -> {
+            try {
+                Long renewed = redisTemplate.execute(RENEW_LOCK, List.of(LOCK_PREFIX + alias), owner,
+                        String.valueOf(lockTtl.toMillis()));
+                if (renewed == null || renewed == 0) {
+                    heldLocks.remove(alias, owner);
+                    log.error("重建锁已丢失 - alias: {}", alias);
+                }
+            } catch (Exception e) {
+                // Redis 暂时不可用时下次重试，锁在 TTL 内仍有效
+                log.warn("续期重建锁失败 - alias: {}, error: {}", alias, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 锁丢失后其他实例可能已经接手，不能再写入新索引、切换别名或更新检查点
+     */
+    private void checkLock(MigrationStatus status) {
+        if (!heldLocks.containsKey(status.getAlias())) {
+            throw new IllegalStateException("Migration lock lost for index: " + status.getAlias());
+        }
+    }
+
+    private void migrate(MigrationStatus status) {
+        try {
+            KnnIndexProperties.Profile profile = status.getProfile() != null
+                    ? knnIndexProperties.getProfiles().getOrDefault(status.getProfile(), new KnnIndexProperties.Profile())
+                    : knnIndexProperties.profileFor(status.getAlias());
+            EmbeddingModel model = resolveModel();
+            if (status.getAlias().equals(openSearchStoreRepository.aliasesByIndex().get(status.getTarget()))) {
+                // 上次切换成功但检查点未保存
+                complete(status);
+                return;
+            }
+            // 新索引的向量维度跟随重新计算向量的模型，更换模型时维度可能变化
+            knnIndexTemplate.createIndex(status.getTarget(), profile, model);
+            if (status.getPass() == 1) {
+                copyPass(status, model);
+                status.setPass(2);
+                saveStatus(status);
+            }
+
+            // 补齐扫描前禁止写入旧索引，之后打开的 PIT 包含旧索引的全部文档；
+            // 禁止写入之前打开的 PIT（进程在补齐扫描中途重启）可能缺少之后写入的文档，重新打开
+            setWriteBlock(status.getSource(), true);
+            if (status.getPitId() != null) {
+                closePit(status);
+                saveStatus(status);
+            }
+            copyPass(status, model);
+            pruneDeleted(status);
+            verifyCounts(status);
+
+            checkLock(status);
+            swapAlias(status);
+            complete(status);
+        } catch (InterruptedException e) {
+            // 进程关闭，检查点保持 RUNNING，重启后继续
+            Thread.currentThread().interrupt();
+            releaseWriteBlock(status);
+            log.warn("重建索引中断 - alias: {}, 已复制: {}", status.getAlias(), status.getCopied());
+        } catch (Exception e) {
+            if (!heldLocks.containsKey(status.getAlias())) {
+                // 其他实例已接手，写入限制和检查点由其维护
+                log.error("重建锁丢失，停止重建 - alias: {}, target: {}", status.getAlias(), status.getTarget(), e);
+                return;
+            }
+            releaseWriteBlock(status);
+            status.setState(State.FAILED);
+            status.setError(e.getMessage());
+            saveStatus(status);
+            log.error("重建索引失败 - alias: {}, target: {}", status.getAlias(), status.getTarget(), e);
+        }
+    }
+
+    /**
+     * 重新计算向量使用的模型，必须与查询侧计算查询向量的默认模型一致
+     */
+    private EmbeddingModel resolveModel() {
+        if (embeddingModelBean.isEmpty()) {
+            return embeddingModel;
+        }
+        EmbeddingModel model = applicationContext.getBean(embeddingModelBean, EmbeddingModel.class);
+        if (model != embeddingModel) {
+            throw new IllegalStateException("Migration embedding model '" + embeddingModelBean
+                    + "' is not the default EmbeddingModel used for queries; make it the default model before migrating");
+        }
+        return model;
+    }
+
+    private void complete(MigrationStatus status) {
+        status.setState(State.COMPLETED);
+        saveStatus(status);
+        redisTemplate.opsForSet().remove(ACTIVE_KEY, status.getAlias());
+        log.info("重建索引完成 - alias: {}, target: {}, 复制: {}, 跳过: {}, 删除: {}",
+                status.getAlias(), status.getTarget(), status.getCopied(), status.getSkipped(), status.getDeleted());
+    }
+
+    /**
+     * 设置或解除旧索引的写入限制
+     */
+    private void setWriteBlock(String index, boolean blocked) throws IOException {
+        openSearchClient.indices().putSettings(p -> p
+                .index(index)
+                .settings(settings -> settings.blocks(blocks -> blocks.write(blocked))));
+        log.info("{}索引写入限制: {}", blocked ? "设置" : "解除", index);
+    }
+
+    /**
+     * 失败或中断时恢复旧索引的写入，旧索引仍是别名指向的索引
+     */
+    private void releaseWriteBlock(MigrationStatus status) {
+        if (status.getPass() < 2) {
+            return;
+        }
+        try {
+            setWriteBlock(status.getSource(), false);
+        } catch (Exception e) {
+            log.error("解除索引写入限制失败，需要手动恢复 - index: {}, error: {}", status.getSource(), e.getMessage());
+        }
+    }
+
+    /**
+     * 切换别名前确认新索引包含旧索引的全部文档，不一致时不切换、不删除旧索引
+     */
+    private void verifyCounts(MigrationStatus status) throws IOException {
+        openSearchClient.indices().refresh(r -> r.index(List.of(status.getSource(), status.getTarget())));
+        long sourceCount = openSearchClient.count(c -> c.index(status.getSource())).count();
+        long targetCount = openSearchClient.count(c -> c.index(status.getTarget())).count();
+        if (sourceCount != targetCount) {
+            throw new IllegalStateException("Document count mismatch, source " + status.getSource() + ": " + sourceCount
+                    + ", target " + status.getTarget() + ": " + targetCount);
+        }
+        log.info("文档数校验通过 - source: {}, target: {}, 文档: {}", status.getSource(), status.getTarget(), targetCount);
+    }
+
+    /**
+     * 扫描一遍旧索引，把新索引中还没有的文档重新计算向量后写入；
+     * 对账扫描（pass 2）时新索引中已有但内容或 metadata 与旧索引不同的文档（复制期间被更新）也重新写入
+     */
+    private void copyPass(MigrationStatus status, EmbeddingModel model) throws IOException, InterruptedException {
+        if (status.getPitId() == null) {
+            openPit(status);
+        }
+        boolean reopened = false;
+        while (true) {
+            checkLock(status);
+            long pageStart = System.currentTimeMillis();
+            SearchResponse<Map> page;
+            try {
+                page = searchPage(status);
+            } catch (OpenSearchException e) {
+                if (reopened) {
+                    throw e;
+                }
+                // PIT 已过期（通常是进程停止超过 keep-alive），重新扫描，已复制的文档会被跳过
+                log.warn("PIT 失效，重新扫描 - alias: {}, error: {}", status.getAlias(), e.getMessage());
+                openPit(status);
+                reopened = true;
+                continue;
+            }
+
+            List<Hit<Map>> hits = page.hits().hits();
+            if (hits.isEmpty()) {
+                break;
+            }
+            Set<String> existing = status.getPass() == 1
+                    ? existingIds(status.getTarget(), hits.stream().map(Hit::id).toList())
+                    : unchangedIds(status.getTarget(), hits);
+            List<Document> documents = hits.stream()
+                    .filter(hit -> !existing.contains(hit.id()))
+                    .map(IndexMigrator::toDocument)
+                    .toList();
+            if (!documents.isEmpty()) {
+                BulkIngestionWriter.IngestionResult result = bulkIngestionWriter.write(status.getTarget(), documents, model);
+                if (!result.isSuccess()) {
+                    throw new IOException(result.failed() + " documents failed to write to " + status.getTarget());
+                }
+            }
+
+            status.setCopied(status.getCopied() + documents.size());
+            status.setSkipped(status.getSkipped() + existing.size());
+            status.setSearchAfter(hits.get(hits.size() - 1).sort());
+            saveStatus(status);
+            throttle(documents.size(), pageStart);
+            if (hits.size() < pageSize) {
+                break;
+            }
+        }
+        closePit(status);
+    }
+
+    private void openPit(MigrationStatus status) throws IOException {
+        String pitId = openSearchClient.createPit(c -> c
+                .targetIndexes(List.of(status.getSource()))
+                .keepAlive(Time.of(t -> t.time(pitKeepAlive)))).pitId();
+        status.setPitId(pitId);
+        status.setSearchAfter(null);
+        saveStatus(status);
+    }
+
+    private void closePit(MigrationStatus status) {
+        try {
+            openSearchClient.deletePit(d -> d.pitId(List.of(status.getPitId())));
+        } catch (IOException | OpenSearchException e) {
+            // PIT 到期后自动释放
+            log.debug("Failed to delete PIT: {}", e.getMessage());
+        }
+        status.setPitId(null);
+        status.setSearchAfter(null);
+    }
+
+    private SearchResponse<Map> searchPage(MigrationStatus status) throws IOException {
+        return openSearchClient.search(s -> {
+            s.pit(Pit.of(p -> p.id(status.getPitId()).keepAlive(pitKeepAlive)))
+                    .size(pageSize)
+                    .sort(so -> so.field(f -> f.field("_shard_doc").order(SortOrder.Asc)))
+                    // 向量在新索引中重新计算，不需要读取
+                    .source(src -> src.filter(f -> f.excludes("embedding")));
+            if (status.getSearchAfter() != null) {
+                s.searchAfter(status.getSearchAfter());
+            }
+            return s;
+        }, Map.class);
+    }
+
+    /**
+     * 删除新索引中已不存在于旧索引的文档（复制之后在旧索引中被删除）。
+     * 旧索引此时已禁止写入，别名仍指向旧索引，新索引没有其他写入方；
+     * 删除是幂等的，不保存检查点，中断后重新扫描
+     */
+    private void pruneDeleted(MigrationStatus status) throws IOException {
+        String target = status.getTarget();
+        openSearchClient.indices().refresh(r -> r.index(target));
+        String pitId = openSearchClient.createPit(c -> c
+                .targetIndexes(List.of(target))
+                .keepAlive(Time.of(t -> t.time(pitKeepAlive)))).pitId();
+        long deleted = 0;
+        try {
+            List<String> searchAfter = null;
+            while (true) {
+                checkLock(status);
+                List<String> after = searchAfter;
+                SearchResponse<Map> page = openSearchClient.search(s -> {
+                    s.pit(Pit.of(p -> p.id(pitId).keepAlive(pitKeepAlive)))
+                            .size(pageSize)
+                            .sort(so -> so.field(f -> f.field("_shard_doc").order(SortOrder.Asc)))
+                            .source(src -> src.fetch(false));
+                    if (after != null) {
+                        s.searchAfter(after);
+                    }
+                    return s;
+                }, Map.class);
+                List<Hit<Map>> hits = page.hits().hits();
+                if (hits.isEmpty()) {
+                    break;
+                }
+                List<String> ids = hits.stream().map(Hit::id).toList();
+                Set<String> inSource = existingIds(status.getSource(), ids);
+                List<String> stale = ids.stream().filter(id -> !inSource.contains(id)).toList();
+                if (!stale.isEmpty()) {
+                    deleteDocuments(target, stale);
+                    deleted += stale.size();
+                }
+                searchAfter = hits.get(hits.size() - 1).sort();
+                if (hits.size() < pageSize) {
+                    break;
+                }
+            }
+        } finally {
+            try {
+                openSearchClient.deletePit(d -> d.pitId(List.of(pitId)));
+            } catch (IOException | OpenSearchException e) {
+                log.debug("Failed to delete PIT: {}", e.getMessage());
+            }
+        }
+        if (deleted > 0) {
+            status.setDeleted(status.getDeleted() + deleted);
+            saveStatus(status);
+            log.info("对账删除旧索引中已不存在的文档 - alias: {}, target: {}, 删除: {}", status.getAlias(), target, deleted);
+        }
+    }
+
+    private void deleteDocuments(String index, List<String> ids) throws IOException {
+        List<BulkOperation> operations = ids.stream()
+                .map(id -> BulkOperation.of(op -> op.delete(d -> d.index(index).id(id))))
+                .toList();
+        BulkResponse response = openSearchClient.bulk(b -> b.operations(operations));
+        if (response.errors()) {
+            long failed = response.items().stream().filter(item -> item.error() != null).count();
+            throw new IOException(failed + " documents failed to delete from " + index);
+        }
+    }
+
+    /**
+     * 新索引中已存在的文档 id
+     */
+    private Set<String> existingIds(String target, List<String> ids) throws IOException {
+        var response = openSearchClient.mget(m -> m
+                .index(target)
+                .ids(ids)
+                .source(src -> src.fetch(false)), Map.class);
+        Set<String> existing = new HashSet<>();
+        response.docs().forEach(item -> {
+            if (item.isResult() && item.result().found()) {
+                existing.add(item.result().id());
+            }
+        });
+        return existing;
+    }
+
+    /**
+     * 新索引中已存在且内容和 metadata 与旧索引一致的文档 id，其余文档需要（重新）复制
+     */
+    private Set<String> unchangedIds(String target, List<Hit<Map>> hits) throws IOException {
+        var response = openSearchClient.mget(m -> m
+                .index(target)
+                .ids(hits.stream().map(Hit::id).toList())
+                .sourceExcludes("embedding"), Map.class);
+        Map<String, Map> targetSources = new HashMap<>();
+        response.docs().forEach(item -> {
+            if (item.isResult() && item.result().found() && item.result().source() != null) {
+                targetSources.put(item.result().id(), item.result().source());
+            }
+        });
+        Set<String> unchanged = new HashSet<>();
+        for (Hit<Map> hit : hits) {
+            Map targetSource = targetSources.get(hit.id());
+            Map sourceSource = hit.source() != null ? hit.source() : Map.of();
+            if (targetSource != null
+                    && Objects.equals(sourceSource.get("content"), targetSource.get("content"))
+                    && Objects.equals(sourceSource.get("metadata"), targetSource.get("metadata"))) {
+                unchanged.add(hit.id());
+            }
+        }
+        return unchanged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Document toDocument(Hit<Map> hit) {
+        Map<String, Object> source = hit.source() != null ? hit.source() : Map.of();
+        Object content = source.get("content");
+        Object metadata = source.get("metadata");
+        return new Document(hit.id(),
+                content != null ? content.toString() : "",
+                metadata instanceof Map ? new HashMap<>((Map<String, Object>) metadata) : new HashMap<>());
+    }
+
+    /**
+     * 按 max-docs-per-second 限速，写入的文档越多，下一页前等待越久
+     */
+    private void throttle(int documents, long pageStart) throws InterruptedException {
+        if (maxDocsPerSecond <= 0 || documents == 0) {
+            return;
+        }
+        long expectedMillis = documents * 1000L / maxDocsPerSecond;
+        long elapsed = System.currentTimeMillis() - pageStart;
+        if (expectedMillis > elapsed) {
+            Thread.sleep(expectedMillis - elapsed);
+        }
+    }
+
+    /**
+     * 在一次 _aliases 请求中把别名指向新索引并移除旧索引上的别名，
+     * 首次重建时旧索引与别名同名，只能通过 remove_index 在同一请求中删除
+     */
+    private void swapAlias(MigrationStatus status) throws IOException {
+        String alias = status.getAlias();
+        String source = status.getSource();
+        String target = status.getTarget();
+        boolean sourceIsAlias = !source.equals(alias);
+        openSearchClient.indices().updateAliases(u -> {
+            u.actions(a -> a.add(add -> add.index(target).alias(alias).isWriteIndex(true)));
+            if (sourceIsAlias) {
+                u.actions(a -> a.remove(remove -> remove.index(source).alias(alias)));
+            } else {
+                u.actions(a -> a.removeIndex(remove -> remove.index(source)));
+            }
+            return u;
+        });
+        log.info("别名已切换 - alias: {}, {} -> {}", alias, source, target);
+
+        if (sourceIsAlias && deleteSource) {
+            openSearchClient.indices().delete(d -> d.index(source));
+            log.info("已删除旧索引: {}", source);
+        } else if (sourceIsAlias) {
+            // 保留的旧索引解除写入限制，回滚时可以直接把别名切回
+            setWriteBlock(source, false);
+        }
+        // 检索结果来自新的向量，失效索引元数据和依赖索引内容的缓存
+        openSearchStoreRepository.notifyIndexWritten(alias);
+    }
+
+    /**
+     * 别名当前指向的物理索引；尚未重建过的索引即为同名的物理索引
+     */
+    private String resolveSource(String alias) throws IOException {
+        List<String> physicalNames = new ArrayList<>();
+        openSearchStoreRepository.aliasesByIndex().forEach((index, indexAlias) -> {
+            if (indexAlias.equals(alias)) {
+                physicalNames.add(index);
+            }
+        });
+        if (physicalNames.size() > 1) {
+            throw new IllegalStateException("Alias '" + alias + "' points to multiple indexes: " + physicalNames);
+        }
+        if (physicalNames.size() == 1) {
+            return physicalNames.get(0);
+        }
+        if (!openSearchClient.indices().exists(e -> e.index(alias)).value()) {
+            throw new IllegalArgumentException("Index not found: " + alias);
+        }
+        return alias;
+    }
+
+    private Optional<MigrationStatus> loadStatus(String alias) {
+        String value = redisTemplate.opsForValue().get(STATUS_PREFIX + alias);
+        if (value == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(value, MigrationStatus.class));
+        } catch (IOException e) {
+            log.warn("Failed to read migration status for '{}': {}", alias, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void saveStatus(MigrationStatus status) {
+        status.setUpdatedAt(System.currentTimeMillis());
+        try {
+            redisTemplate.opsForValue().set(STATUS_PREFIX + status.getAlias(), objectMapper.writeValueAsString(status));
+        } catch (IOException e) {
+            log.warn("Failed to save migration status for '{}': {}", status.getAlias(), e.getMessage());
+        }
+    }
+}
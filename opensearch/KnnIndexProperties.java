@@ -0,0 +1,72 @@
+package com.ws16289.daxi.repository.impl;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * kNN 索引模板配置（opensearch.index）
+ * 按 profile 定义 HNSW 参数、引擎、向量编码和分片数，indexProfiles 指定索引使用的 profile，
+ * 未指定的索引使用 defaultProfile，profile 未配置时使用 {@link Profile} 的默认值
+ */
+@Data
+public class KnnIndexProperties {
+
+    private String defaultProfile = "default";
+
+    private Map<String, Profile> profiles = new HashMap<>();
+
+    /**
+     * 索引名称（规范化后）到 profile 名称的映射
+     */
+    private Map<String, String> indexProfiles = new HashMap<>();
+
+    public Profile profileFor(String indexName) {
+        String profileName = indexProfiles.getOrDefault(indexName, defaultProfile);
+        return profiles.getOrDefault(profileName, new Profile());
+    }
+
+    @Data
+    public static class Profile {
+
+        /**
+         * kNN 引擎：lucene / faiss / nmslib
+         */
+        private String engine = "lucene";
+
+        /**
+         * 相似度：cosinesimil / innerproduct / l2
+         */
+        private String spaceType = "cosinesimil";
+
+        /**
+         * 每个节点的最大连接数，越大召回越高、内存越大
+         */
+        private int m = 16;
+
+        /**
+         * 构建索引时的候选队列大小，越大召回越高、写入越慢
+         */
+        private int efConstruction = 128;
+
+        /**
+         * 检索时的候选队列大小（faiss / nmslib），越大召回越高、延迟越高
+         */
+        private int efSearch = 100;
+
+        /**
+         * 向量编码：float（不压缩）/ fp16（faiss，内存减半）/ byte（lucene int7 标量量化，内存约为 1/4）
+         */
+        private String encoding = "float";
+
+        /**
+         * 向量维度，未设置时从 EmbeddingModel 获取
+         */
+        private Integer dimensions;
+
+        private int shards = 1;
+
+        private int replicas = 1;
+    }
+}
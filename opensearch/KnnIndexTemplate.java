@@ -0,0 +1,141 @@
+package com.ws16289.daxi.repository.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.generic.Bodies;
+import org.opensearch.client.opensearch.generic.Body;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * kNN 索引模板
+ * 按 {@link KnnIndexProperties} 中的 profile 显式创建索引的 settings 和 mapping，
+ * 字段布局与 OpenSearchVectorStore 写入的文档一致：content / metadata / embedding（knn_vector + HNSW）
+ */
+@Slf4j
+@Component
+public class KnnIndexTemplate {
+
+    @Autowired
+    private OpenSearchClient openSearchClient;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private KnnIndexProperties properties;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 创建索引，索引已存在时直接返回
+     *
+     * @param indexName 规范化后的索引名称
+     * @return true 表示新建了索引，false 表示索引已存在
+     */
+    public boolean createIndex(String indexName) throws IOException {
+        return createIndex(indexName, properties.profileFor(indexName), embeddingModel);
+    }
+
+    /**
+     * 按指定 profile 创建索引，用于重建索引时目标索引使用新的参数和新的 Embedding 模型
+     *
+     * @param indexName 规范化后的物理索引名称
+     * @param profile 索引参数
+     * @param model 写入该索引的 Embedding 模型，profile 未指定维度时使用其维度
+     * @return true 表示新建了索引，false 表示索引已存在
+     */
+    public boolean createIndex(String indexName, KnnIndexProperties.Profile profile, EmbeddingModel model)
+            throws IOException {
+        String body = objectMapper.writeValueAsString(body(profile, model.dimensions()));
+        try (var response = openSearchClient.generic().execute(Requests.builder()
+                .method("PUT")
+                .endpoint("/" + indexName)
+                .body(Bodies.json(body))
+                .build())) {
+            if (response.getStatus() < 300) {
+                log.info("Created kNN index: {}, engine: {}, encoding: {}, m: {}, ef_construction: {}",
+                        indexName, profile.getEngine(), profile.getEncoding(), profile.getM(), profile.getEfConstruction());
+                return true;
+            }
+            String error = response.getBody().map(Body::bodyAsString).orElse("");
+            if (response.getStatus() == 400 && error.contains("resource_already_exists_exception")) {
+                return false;
+            }
+            throw new IOException("Failed to create index '" + indexName + "', status: " + response.getStatus() + ", " + error);
+        }
+    }
+
+    /**
+     * 索引的 settings 和 mappings
+     *
+     * @param modelDimensions Embedding 模型的向量维度，profile 未指定维度时使用
+     */
+    Map<String, Object> body(KnnIndexProperties.Profile profile, int modelDimensions) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("number_of_shards", profile.getShards());
+        settings.put("number_of_replicas", profile.getReplicas());
+        settings.put("knn", true);
+        settings.put("knn.algo_param.ef_search", profile.getEfSearch());
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("m", profile.getM());
+        parameters.put("ef_construction", profile.getEfConstruction());
+        Map<String, Object> encoder = encoder(profile);
+        if (encoder != null) {
+            parameters.put("encoder", encoder);
+        }
+
+        Map<String, Object> method = new LinkedHashMap<>();
+        method.put("name", "hnsw");
+        method.put("engine", profile.getEngine().toLowerCase(Locale.ROOT));
+        method.put("space_type", profile.getSpaceType());
+        method.put("parameters", parameters);
+
+        Map<String, Object> embedding = new LinkedHashMap<>();
+        embedding.put("type", "knn_vector");
+        embedding.put("dimension", profile.getDimensions() != null ? profile.getDimensions() : modelDimensions);
+        embedding.put("method", method);
+
+        Map<String, Object> fieldProperties = new LinkedHashMap<>();
+        fieldProperties.put("content", Map.of("type", "text"));
+        fieldProperties.put("metadata", Map.of("type", "object"));
+        fieldProperties.put("embedding", embedding);
+
+        return Map.of(
+                "settings", Map.of("index", settings),
+                "mappings", Map.of("properties", fieldProperties));
+    }
+
+    /**
+     * 向量编码对应的 encoder，float 不需要 encoder
+     */
+    private static Map<String, Object> encoder(KnnIndexProperties.Profile profile) {
+        String engine = profile.getEngine().toLowerCase(Locale.ROOT);
+        String encoding = profile.getEncoding().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "float":
+                return null;
+            case "fp16":
+                if (!"faiss".equals(engine)) {
+                    throw new IllegalArgumentException("fp16 encoding requires the faiss engine, got: " + engine);
+                }
+                return Map.of("name", "sq", "parameters", Map.of("type", "fp16"));
+            case "byte":
+                if (!"lucene".equals(engine)) {
+                    throw new IllegalArgumentException("byte encoding requires the lucene engine, got: " + engine);
+                }
+                return Map.of("name", "sq");
+            default:
+                throw new IllegalArgumentException("Unsupported vector encoding: " + encoding);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.ws16289.daxi.repository.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * OpenSearch 连接健康监控
+ * 后台定时 ping 集群并缓存 UP / DOWN 状态，Repository 方法读取状态而不是每次调用前先请求 info()。
+ * 连续 failure-threshold 次失败（定时 ping 或业务请求）后熔断，熔断期间 {@link #ensureAvailable()} 直接失败；
+ * 定时 ping 成功后恢复。状态切换和 ping 延迟通过 Micrometer 导出
+ */
+@Slf4j
+@Component
+public class OpenSearchHealthMonitor {
+
+    public static final String PING_TIMER = "opensearch.health.ping";
+    public static final String TRANSITION_COUNTER = "opensearch.health.transitions";
+    public static final String UP_GAUGE = "opensearch.health.up";
+
+    public enum State {
+        UP, DOWN
+    }
+
+    @Autowired
+    private OpenSearchClient openSearchClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${opensearch.health.ping-interval:5s}")
+    private Duration pingInterval;
+
+    @Value("${opensearch.health.failure-threshold:3}")
+    private int failureThreshold;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.UP);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private ScheduledExecutorService pinger;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder(UP_GAUGE, state, s -> s.get() == State.UP ? 1 : 0)
+                .description("OpenSearch 连接状态，1 为可用")
+                .register(meterRegistry);
+
+        // 启动时同步 ping 一次，依赖方初始化时即可读取到真实状态；启动阶段失败一次即视为不可用
+        if (!ping()) {
+            transitionTo(State.DOWN);
+        }
+
+        pinger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "opensearch-health-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = pingInterval.toMillis();
+        pinger.scheduleWithFixedDelay(this::ping, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pinger != null) {
+            pinger.shutdownNow();
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isAvailable() {
+        return state.get() == State.UP;
+    }
+
+    /**
+     * 熔断期间直接失败，不访问 OpenSearch
+     */
+    public void ensureAvailable() {
+        if (!isAvailable()) {
+            throw new RuntimeException("Cannot connect to OpenSearch: cluster is marked down by health monitor");
+        }
+    }
+
+    /**
+     * 业务请求成功
+     */
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * 业务请求因连接问题失败，连续失败达到阈值时熔断
+     */
+    public void recordFailure(Exception e) {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            transitionTo(State.DOWN);
+        }
+        log.debug("OpenSearch request failed ({} consecutive): {}", consecutiveFailures.get(), e.getMessage());
+    }
+
+    /**
+     * ping 集群并更新状态
+     *
+     * @return ping 是否成功
+     */
+    boolean ping() {
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            success = openSearchClient.ping().value();
+        } catch (Exception e) {
+            log.debug("OpenSearch ping failed: {}", e.getMessage());
+            success = false;
+        }
+        Timer.builder(PING_TIMER)
+                .description("OpenSearch ping 延迟")
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (success) {
+            consecutiveFailures.set(0);
+            transitionTo(State.UP);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            transitionTo(State.DOWN);
+        }
+        return success;
+    }
+
+    private void transitionTo(State next) {
+        State previous = state.getAndSet(next);
+        if (previous == next) {
+            return;
+        }
+        Counter.builder(TRANSITION_COUNTER)
+                .description("OpenSearch 连接状态切换次数")
+                .tag("from", previous.name().toLowerCase())
+                .tag("to", next.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        if (next == State.DOWN) {
+            log.warn("OpenSearch marked DOWN after {} consecutive failures", consecutiveFailures.get());
+        } else {
+            log.info("OpenSearch connection recovered, marked UP");
+        }
+    }
+}
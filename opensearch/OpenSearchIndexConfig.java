@@ -0,0 +1,22 @@
+package com.ws16289.daxi.config;
+
+import com.ws16289.daxi.repository.impl.KnnIndexProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * OpenSearch 索引配置
+ */
+@Configuration
+public class OpenSearchIndexConfig {
+
+    /**
+     * kNN 索引模板配置
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "opensearch.index")
+    public KnnIndexProperties knnIndexProperties() {
+        return new KnnIndexProperties();
+    }
+}
@@ -0,0 +1,10 @@
+package com.ws16289.daxi.repository.impl;
+
+/**
+ * 索引内容变化事件，在文档写入、删除或索引被删除后发布
+ * 用于失效依赖索引内容的上层缓存
+ *
+ * @param indexName 规范化后的索引名称
+ */
+public record VectorStoreWriteEvent(String indexName) {
+}
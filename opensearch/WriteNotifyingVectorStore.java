@@ -0,0 +1,80 @@
+package com.ws16289.daxi.repository.impl;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * VectorStore 装饰器
+ * 所有读操作直接委托；写入和删除完成后回调 onWrite(indexName)，用于失效依赖索引内容的缓存
+ */
+public class WriteNotifyingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final String indexName;
+    private final Consumer<String> onWrite;
+
+    public WriteNotifyingVectorStore(VectorStore delegate, String indexName, Consumer<String> onWrite) {
+        this.delegate = delegate;
+        this.indexName = indexName;
+        this.onWrite = onWrite;
+    }
+
+    /**
+     * 被装饰的原始 VectorStore
+     */
+    public VectorStore getDelegate() {
+        return delegate;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        try {
+            delegate.add(documents);
+        } finally {
+            onWrite.accept(indexName);
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        try {
+            delegate.delete(idList);
+        } finally {
+            onWrite.accept(indexName);
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        try {
+            delegate.delete(filterExpression);
+        } finally {
+            onWrite.accept(indexName);
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return delegate.similaritySearch(request);
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
@@ -0,0 +1,123 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 自适应截断检索器
+ * 委托检索器一次取回 maxK 个候选，再根据得分分布决定保留的文档数：
+ * GAP 模式在相邻得分落差最大处截断（落差不足 minGap 时全部保留）；
+ * MASS 模式保留累计得分占比首次达到 massThreshold 的前 k 个文档。
+ * 答案集中的事实型查询通常在前几个文档后出现明显落差，宽泛的查询得分分布平缓，会保留更多文档
+ */
+@Slf4j
+public class AdaptiveCutoffDocumentRetriever implements DocumentRetriever {
+
+    public enum Mode {
+        GAP, MASS
+    }
+
+    private final DocumentRetriever delegate;
+    private final Mode mode;
+    private final int minK;
+    private final double minGap;
+    private final double massThreshold;
+    private final IntConsumer onCutoff;
+
+    /**
+     * @param delegate 取回候选集的检索器，其 topK 即为 maxK
+     * @param mode 截断方式
+     * @param minK 最少保留的文档数
+     * @param minGap GAP 模式下触发截断的最小得分落差
+     * @param massThreshold MASS 模式下的累计得分占比阈值 (0, 1]
+     * @param onCutoff 每次检索选定的 k，用于记录指标
+     */
+    public AdaptiveCutoffDocumentRetriever(DocumentRetriever delegate, Mode mode, int minK, double minGap,
+                                           double massThreshold, IntConsumer onCutoff) {
+        if (minK <= 0) {
+            throw new IllegalArgumentException("minK must be positive: " + minK);
+        }
+        if (massThreshold <= 0 || massThreshold > 1) {
+            throw new IllegalArgumentException("massThreshold must be in (0, 1]: " + massThreshold);
+        }
+        this.delegate = delegate;
+        this.mode = mode;
+        this.minK = minK;
+        this.minGap = minGap;
+        this.massThreshold = massThreshold;
+        this.onCutoff = onCutoff;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        return cutoff(delegate.retrieve(query));
+    }
+
+    /**
+     * 对候选集按得分排序并截断
+     */
+    public List<Document> cutoff(List<Document> retrieved) {
+        List<Document> candidates = new ArrayList<>(retrieved);
+        candidates.sort(Comparator.comparingDouble(AdaptiveCutoffDocumentRetriever::scoreOf).reversed());
+
+        int n = candidates.size();
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = scoreOf(candidates.get(i));
+        }
+        int k = n <= minK ? n : (mode == Mode.GAP ? cutoffByGap(scores) : cutoffByMass(scores));
+        onCutoff.accept(k);
+        log.debug("自适应截断 - mode: {}, 候选: {}, 保留: {}", mode, n, k);
+        return candidates.subList(0, k);
+    }
+
+    /**
+     * 在 [minK, n) 范围内寻找最大的相邻得分落差，在落差之前截断
+     */
+    private int cutoffByGap(double[] scores) {
+        int cutoff = scores.length;
+        double largestGap = minGap;
+        for (int i = minK; i < scores.length; i++) {
+            double gap = scores[i - 1] - scores[i];
+            if (gap >= largestGap) {
+                largestGap = gap;
+                cutoff = i;
+            }
+        }
+        return cutoff;
+    }
+
+    /**
+     * 以最低得分为基线，保留累计得分占比首次达到 massThreshold 的前 k 个文档
+     */
+    private int cutoffByMass(double[] scores) {
+        double floor = scores[scores.length - 1];
+        double total = 0;
+        for (double score : scores) {
+            total += score - floor;
+        }
+        if (total <= 0) {
+            // 得分完全相同，无法区分，全部保留
+            return scores.length;
+        }
+        double cumulative = 0;
+        for (int i = 0; i < scores.length; i++) {
+            cumulative += scores[i] - floor;
+            if (i + 1 >= minK && cumulative / total >= massThreshold) {
+                return i + 1;
+            }
+        }
+        return scores.length;
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() != null ? document.getScore() : 0d;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * 自适应截断检索器工厂
+ * 开启后检索阶段按 max-k 取回候选集，再由 {@link AdaptiveCutoffDocumentRetriever} 按得分分布决定实际使用的文档数，
+ * 每次选定的 k 记录到 rag.retrieval.adaptive.k 分布指标，用于对比固定 topK 时的上下文大小
+ */
+@Component
+public class AdaptiveCutoffRetrieverFactory {
+
+    public static final String CUTOFF_SUMMARY = "rag.retrieval.adaptive.k";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RagPipelineMetrics pipelineMetrics;
+
+    @Value("${embedding.retrieval.adaptive.enabled:false}")
+    private boolean enabled;
+
+    // gap：按最大得分落差截断；mass：按累计得分占比截断
+    @Value("${embedding.retrieval.adaptive.mode:gap}")
+    private String mode;
+
+    @Value("${embedding.retrieval.adaptive.min-k:1}")
+    private int minK;
+
+    @Value("${embedding.retrieval.adaptive.max-k:10}")
+    private int maxK;
+
+    @Value("${embedding.retrieval.adaptive.min-gap:0.05}")
+    private double minGap;
+
+    @Value("${embedding.retrieval.adaptive.mass:0.8}")
+    private double massThreshold;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 检索阶段应取回的候选文档数
+     */
+    public int candidateCount() {
+        return Math.max(maxK, minK);
+    }
+
+    /**
+     * @param indexName 索引名称，用作指标标签
+     * @param delegate 按 {@link #candidateCount()} 取回候选集的检索器
+     */
+    public DocumentRetriever create(String indexName, DocumentRetriever delegate) {
+        AdaptiveCutoffDocumentRetriever.Mode cutoffMode =
+                AdaptiveCutoffDocumentRetriever.Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        DistributionSummary chosenK = DistributionSummary.builder(CUTOFF_SUMMARY)
+                .description("自适应截断后保留的文档数")
+                .tag("vector_store", pipelineMetrics.vectorStoreTag(indexName))
+                .tag("mode", cutoffMode.name().toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        AdaptiveCutoffDocumentRetriever retriever =
+                new AdaptiveCutoffDocumentRetriever(delegate, cutoffMode, minK, minGap, massThreshold, chosenK::record);
+        if (delegate instanceof AsyncDocumentRetriever async) {
+            return AsyncDocumentRetriever.of(retriever, query -> async.retrieveAsync(query).map(retriever::cutoff));
+        }
+        return retriever;
+    }
+}
@@ -0,0 +1,36 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 支持非阻塞检索的 DocumentRetriever
+ * {@link #retrieveAsync(Query)} 不占用调用线程等待 OpenSearch 响应；
+ * {@link #retrieve(Query)} 保留阻塞语义，供 RetrievalAugmentationAdvisor 等同步调用方使用
+ */
+public interface AsyncDocumentRetriever extends DocumentRetriever {
+
+    Mono<List<Document>> retrieveAsync(Query query);
+
+    /**
+     * 组合阻塞检索和非阻塞检索两条路径，用于在装饰检索器时保留非阻塞能力
+     */
+    static AsyncDocumentRetriever of(DocumentRetriever blocking, Function<Query, Mono<List<Document>>> async) {
+        return new AsyncDocumentRetriever() {
+            @Override
+            public Mono<List<Document>> retrieveAsync(Query query) {
+                return async.apply(query);
+            }
+
+            @Override
+            public List<Document> retrieve(Query query) {
+                return blocking.retrieve(query);
+            }
+        };
+    }
+}
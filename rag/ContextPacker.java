@@ -0,0 +1,135 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上下文组装器
+ * 按相似度从高到低将检索到的文档放入上下文，直到达到 Token 预算；
+ * 放不下的长文档在句子边界处截断，其余文档丢弃
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    /**
+     * 文档被截断时写入元数据的键
+     */
+    public static final String TRIMMED_METADATA_KEY = "context_trimmed";
+
+    // 句子边界：中英文句末标点和换行之后
+    private static final String SENTENCE_BOUNDARY = "(?<=[。！？!?；;\\n])|(?<=\\.\\s)";
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    @Value("${embedding.retrieval.context.max-tokens:3000}")
+    private int maxTokens;
+
+    @Value("${embedding.retrieval.context.min-trim-tokens:64}")
+    private int minTrimTokens;
+
+    // 每个文档的标题行（"--- 文档 n (相似度: x) ---"）占用的 Token 估算
+    @Value("${embedding.retrieval.context.doc-overhead-tokens:16}")
+    private int docOverheadTokens;
+
+    /**
+     * 组装结果
+     *
+     * @param documents 放入上下文的文档（按相似度排序，可能被截断）
+     * @param usedTokens 已使用的 Token 数
+     * @param droppedTokens 因超出预算被丢弃或截掉的 Token 数
+     * @param droppedDocuments 被完整丢弃的文档数
+     * @param trimmedDocuments 被截断的文档数
+     */
+    public record PackedContext(List<Document> documents, int usedTokens, int droppedTokens,
+                                int droppedDocuments, int trimmedDocuments) {
+    }
+
+    public PackedContext pack(List<Document> documents) {
+        return pack(documents, maxTokens);
+    }
+
+    /**
+     * 按 Token 预算组装上下文
+     *
+     * @param documents 检索到的文档
+     * @param tokenBudget Token 预算
+     * @return 组装结果
+     */
+    public PackedContext pack(List<Document> documents, int tokenBudget) {
+        List<Document> sorted = new ArrayList<>(documents);
+        // 稳定排序，相似度相同时保持检索顺序
+        sorted.sort(Comparator.comparingDouble(ContextPacker::scoreOf).reversed());
+
+        List<Document> packed = new ArrayList<>();
+        int used = 0;
+        int dropped = 0;
+        int droppedDocuments = 0;
+        int trimmedDocuments = 0;
+
+        for (Document doc : sorted) {
+            String text = doc.getText() == null ? "" : doc.getText();
+            int docTokens = tokenCountEstimator.estimate(text);
+            int remaining = tokenBudget - used - docOverheadTokens;
+
+            if (docTokens <= remaining) {
+                packed.add(doc);
+                used += docTokens + docOverheadTokens;
+                continue;
+            }
+
+            if (remaining >= minTrimTokens) {
+                String trimmed = trimToSentences(text, remaining);
+                if (!trimmed.isEmpty()) {
+                    int trimmedTokens = tokenCountEstimator.estimate(trimmed);
+                    Map<String, Object> metadata = new LinkedHashMap<>(doc.getMetadata());
+                    metadata.put(TRIMMED_METADATA_KEY, true);
+                    packed.add(doc.mutate().text(trimmed).metadata(metadata).build());
+                    used += trimmedTokens + docOverheadTokens;
+                    dropped += docTokens - trimmedTokens;
+                    trimmedDocuments++;
+                    continue;
+                }
+            }
+
+            dropped += docTokens;
+            droppedDocuments++;
+        }
+
+        PackedContext result = new PackedContext(packed, used, dropped, droppedDocuments, trimmedDocuments);
+        log.info("上下文组装完成 - 预算: {}, 使用: {}, 丢弃: {} Tokens, 文档: {}/{}, 截断: {}",
+                tokenBudget, used, dropped, packed.size(), documents.size(), trimmedDocuments);
+        return result;
+    }
+
+    /**
+     * 在句子边界截断文本，使其不超过 Token 预算
+     */
+    private String trimToSentences(String text, int tokenBudget) {
+        StringBuilder builder = new StringBuilder();
+        int tokens = 0;
+        for (String sentence : text.split(SENTENCE_BOUNDARY)) {
+            int sentenceTokens = tokenCountEstimator.estimate(sentence);
+            if (tokens + sentenceTokens > tokenBudget) {
+                break;
+            }
+            builder.append(sentence);
+            tokens += sentenceTokens;
+        }
+        return builder.toString().trim();
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() != null ? document.getScore() : Double.NEGATIVE_INFINITY;
+    }
+}
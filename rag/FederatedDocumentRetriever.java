@@ -0,0 +1,138 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多索引联邦检索器
+ * 在检索线程池上并行查询多个索引，每个索引有独立的截止时间，超时或失败的索引被跳过；
+ * 各索引的相似度不可直接比较（向量 / 混合检索、不同的数据分布），按各索引内的排名做 RRF 融合，
+ * 得分为 1 / (k + rank)，同名次按原始相似度排序，最多返回 topK 个文档。
+ * 不使用索引内 min-max 归一化：每个索引的第一名都会被拉到 1，只命中弱相关结果的索引会压过真正相关的索引
+ */
+@Slf4j
+public class FederatedDocumentRetriever implements DocumentRetriever {
+
+    /**
+     * 文档来源索引写入元数据的键
+     */
+    public static final String SOURCE_INDEX_METADATA_KEY = "source_index";
+
+    private final Map<String, DocumentRetriever> retrievers;
+    private final ExecutorService executor;
+    private final Duration indexTimeout;
+    private final int rankConstant;
+    private final int topK;
+
+    /**
+     * @param retrievers 索引名称 -> 该索引的检索器
+     * @param executor 检索线程池
+     * @param indexTimeout 单个索引的检索超时
+     * @param rankConstant RRF 常数 k，通常取 60
+     * @param topK 合并后最多返回的文档数
+     */
+    public FederatedDocumentRetriever(Map<String, DocumentRetriever> retrievers, ExecutorService executor,
+                                      Duration indexTimeout, int rankConstant, int topK) {
+        if (retrievers.isEmpty()) {
+            throw new IllegalArgumentException("retrievers must not be empty");
+        }
+        if (rankConstant < 0) {
+            throw new IllegalArgumentException("rankConstant must not be negative: " + rankConstant);
+        }
+        if (topK <= 0) {
+            throw new IllegalArgumentException("topK must be positive: " + topK);
+        }
+        this.retrievers = new LinkedHashMap<>(retrievers);
+        this.executor = executor;
+        this.indexTimeout = indexTimeout;
+        this.rankConstant = rankConstant;
+        this.topK = topK;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        List<Map.Entry<String, Future<List<Document>>>> futures = new ArrayList<>(retrievers.size());
+        retrievers.forEach((indexName, retriever) -> {
+            try {
+                futures.add(Map.entry(indexName, executor.submit(() -> retriever.retrieve(query))));
+            } catch (RejectedExecutionException e) {
+                log.warn("检索线程池已满，跳过索引: {}", indexName);
+            }
+        });
+
+        long deadlineNanos = System.nanoTime() + indexTimeout.toNanos();
+        List<Document> candidates = new ArrayList<>();
+        int succeeded = 0;
+        for (Map.Entry<String, Future<List<Document>>> entry : futures) {
+            String indexName = entry.getKey();
+            Future<List<Document>> future = entry.getValue();
+            try {
+                long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                List<Document> docs = future.get(remaining, TimeUnit.NANOSECONDS);
+                candidates.addAll(fuse(indexName, docs));
+                succeeded++;
+                log.debug("  索引 {} 检索到 {} 个文档", indexName, docs.size());
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("索引 {} 检索超时 ({})，跳过", indexName, indexTimeout);
+            } catch (ExecutionException e) {
+                log.warn("索引 {} 检索失败: {}", indexName, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.getValue().cancel(true));
+                log.warn("联邦检索被中断，返回部分结果");
+                break;
+            }
+        }
+
+        candidates.sort(Comparator.comparingDouble(FederatedDocumentRetriever::fusedScoreOf)
+                .thenComparingDouble(FederatedDocumentRetriever::scoreOf)
+                .reversed());
+        List<Document> result = new ArrayList<>(candidates.subList(0, Math.min(topK, candidates.size())));
+        log.info("联邦检索完成 - 索引数: {}, 成功: {}, 候选文档: {}, 返回: {}",
+                retrievers.size(), succeeded, candidates.size(), result.size());
+        return result;
+    }
+
+    /**
+     * 按索引内排名计算 RRF 得分，原始相似度保留在 score 中用于同名次排序
+     */
+    private List<Document> fuse(String indexName, List<Document> docs) {
+        List<Document> ranked = new ArrayList<>(docs);
+        ranked.sort(Comparator.comparingDouble(FederatedDocumentRetriever::scoreOf).reversed());
+
+        List<Document> fused = new ArrayList<>(ranked.size());
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            Document doc = ranked.get(rank);
+            Map<String, Object> metadata = new LinkedHashMap<>(doc.getMetadata());
+            metadata.put(SOURCE_INDEX_METADATA_KEY, indexName);
+            metadata.put(ReciprocalRankFusionDocumentJoiner.RRF_SCORE_METADATA_KEY, 1.0d / (rankConstant + rank + 1));
+            fused.add(doc.mutate().metadata(metadata).build());
+        }
+        return fused;
+    }
+
+    private static double fusedScoreOf(Document document) {
+        Object score = document.getMetadata().get(ReciprocalRankFusionDocumentJoiner.RRF_SCORE_METADATA_KEY);
+        return score instanceof Number number ? number.doubleValue() : 0d;
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() != null ? document.getScore() : Double.NEGATIVE_INFINITY;
+    }
+}
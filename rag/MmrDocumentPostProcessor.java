@@ -0,0 +1,158 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 Maximal Marginal Relevance 的文档后处理器
+ * 从较大的候选集中逐个选择 lambda * 相关度 - (1 - lambda) * 与已选文档的最大相似度 最高的文档，
+ * 去掉内容高度重复的片段，减少上下文 Token。
+ * 相关度使用检索得分，文档间相似度使用检索器随候选命中一起返回的 embedding
+ * （metadata 中的 {@link OpenSearchDocumentMapper#EMBEDDING_METADATA_KEY}），不再额外读取索引，
+ * 选择过程只在预先分配的 float / double 数组上计算
+ */
+@Slf4j
+public class MmrDocumentPostProcessor implements DocumentPostProcessor {
+
+    private final String indexName;
+    private final double lambda;
+    private final int topN;
+
+    /**
+     * @param indexName 候选文档所在索引，用于日志
+     * @param lambda 相关度权重，1 时退化为按得分排序，越小越强调多样性
+     * @param topN 最多返回的文档数
+     */
+    public MmrDocumentPostProcessor(String indexName, double lambda, int topN) {
+        if (lambda < 0 || lambda > 1) {
+            throw new IllegalArgumentException("lambda must be between 0 and 1: " + lambda);
+        }
+        if (topN <= 0) {
+            throw new IllegalArgumentException("topN must be positive: " + topN);
+        }
+        this.indexName = indexName;
+        this.lambda = lambda;
+        this.topN = topN;
+    }
+
+    @Override
+    public List<Document> process(Query query, List<Document> documents) {
+        int n = documents.size();
+        int k = Math.min(topN, n);
+        float[][] vectors = n <= 1 ? null : candidateEmbeddings(documents);
+        if (vectors == null) {
+            if (n > 1) {
+                log.warn("候选文档不含向量，按检索得分截取 - index: {}, 候选: {}", indexName, n);
+            }
+            return documents.subList(0, k).stream().map(MmrDocumentPostProcessor::withoutEmbedding).toList();
+        }
+        // 预先计算范数，避免选择过程中重复计算
+        double[] norms = new double[n];
+        for (int i = 0; i < n; i++) {
+            norms[i] = vectors[i] == null ? 0 : Math.sqrt(dot(vectors[i], vectors[i]));
+        }
+
+        // 检索得分的量纲因检索方式而异（余弦相似度、混合检索归一化得分、RRF 得分），先归一化到 [0, 1] 再与相似度比较
+        double[] relevance = new double[n];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            Double score = documents.get(i).getScore();
+            relevance[i] = score != null ? score : 0;
+            min = Math.min(min, relevance[i]);
+            max = Math.max(max, relevance[i]);
+        }
+        double range = max - min;
+        for (int i = 0; i < n; i++) {
+            relevance[i] = range > 0 ? (relevance[i] - min) / range : 1;
+        }
+
+        // maxSimilarity[i]：候选 i 与已选文档的最大余弦相似度，每选中一个文档增量更新
+        double[] maxSimilarity = new double[n];
+        boolean[] selected = new boolean[n];
+        int[] order = new int[k];
+
+        for (int round = 0; round < k; round++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double mmr = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (mmr > bestScore) {
+                    bestScore = mmr;
+                    best = i;
+                }
+            }
+            selected[best] = true;
+            order[round] = best;
+
+            float[] chosen = vectors[best];
+            if (chosen == null || norms[best] == 0) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (selected[i] || vectors[i] == null || norms[i] == 0) {
+                    continue;
+                }
+                double similarity = dot(chosen, vectors[i]) / (norms[best] * norms[i]);
+                if (similarity > maxSimilarity[i]) {
+                    maxSimilarity[i] = similarity;
+                }
+            }
+        }
+
+        List<Document> result = new ArrayList<>(k);
+        for (int index : order) {
+            result.add(withoutEmbedding(documents.get(index)));
+        }
+        log.debug("MMR 重排完成 - index: {}, 候选: {}, 返回: {}, lambda: {}", indexName, n, k, lambda);
+        return result;
+    }
+
+    /**
+     * 检索器随命中返回的候选向量，缺失的文档对应位置为 null
+     *
+     * @return 与 documents 顺序一致的向量数组，所有文档都没有向量时返回 null
+     */
+    private static float[][] candidateEmbeddings(List<Document> documents) {
+        float[][] vectors = new float[documents.size()][];
+        boolean found = false;
+        for (int i = 0; i < vectors.length; i++) {
+            if (documents.get(i).getMetadata().get(OpenSearchDocumentMapper.EMBEDDING_METADATA_KEY) instanceof float[] vector) {
+                vectors[i] = vector;
+                found = true;
+            }
+        }
+        return found ? vectors : null;
+    }
+
+    /**
+     * 去掉 metadata 中的候选向量，避免向量随文档进入后续阶段；候选文档可能被合并的请求共享，复制而不是原地修改
+     */
+    private static Document withoutEmbedding(Document document) {
+        if (!document.getMetadata().containsKey(OpenSearchDocumentMapper.EMBEDDING_METADATA_KEY)) {
+            return document;
+        }
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.remove(OpenSearchDocumentMapper.EMBEDDING_METADATA_KEY);
+        return document.mutate().metadata(metadata).build();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * MMR 后处理器工厂
+ * embedding.retrieval.mmr.enabled=true 时，检索阶段按 candidate-multiplier 放大 topK 取回候选集（连同候选向量），
+ * 再由 {@link MmrDocumentPostProcessor} 选出 topK 个文档；与 enable-postprocessor 分开配置，开启后处理不会改变检索的 topK
+ */
+@Slf4j
+@Component
+public class MmrDocumentPostProcessorFactory {
+
+    @Value("${embedding.retrieval.mmr.enabled:false}")
+    private boolean enabled;
+
+    @Value("${embedding.retrieval.mmr.lambda:0.7}")
+    private double lambda;
+
+    // 候选集大小 = topK * candidate-multiplier
+    @Value("${embedding.retrieval.mmr.candidate-multiplier:4}")
+    private int candidateMultiplier;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 检索阶段应取回的候选文档数
+     */
+    public int candidateCount(int topK) {
+        return topK * Math.max(1, candidateMultiplier);
+    }
+
+    public DocumentPostProcessor create(String indexName, int topK) {
+        log.info("MMR 已开启 - index: {}, 检索候选数: {} (topK {} × candidate-multiplier {}), lambda: {}",
+                indexName, candidateCount(topK), topK, candidateMultiplier, lambda);
+        return new MmrDocumentPostProcessor(indexName, lambda, topK);
+    }
+}
@@ -0,0 +1,99 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch.core.SearchResponse;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.filter.Filter;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 基于 OpenSearchAsyncClient 的 kNN 检索器
+ * 查询向量在 embeddingScheduler 上计算（EmbeddingModel 只有阻塞接口），
+ * kNN 请求通过异步客户端发出，等待响应期间不占用线程；请求取消时同时取消 HTTP 请求。
+ * 请求与 OpenSearchVectorStore 构建的一致（knn_score 脚本精确检索，cosinesimil，boost 0.5，min_score 为相似度阈值），
+ * 开启异步、回退到阻塞检索时得分、排序和阈值行为不变，也不依赖索引的 HNSW 配置
+ * 异步请求失败时回退到阻塞检索器，阻塞调用 {@link #retrieve(Query)} 直接使用阻塞检索器；
+ * 需要随命中返回候选向量（MMR）时阻塞调用也发出同样的请求并等待结果，回退到阻塞检索器时结果不含向量
+ */
+@Slf4j
+public class OpenSearchAsyncDocumentRetriever implements AsyncDocumentRetriever {
+
+    private final OpenSearchAsyncClient asyncClient;
+    private final EmbeddingModel embeddingModel;
+    private final Scheduler embeddingScheduler;
+    private final String indexName;
+    private final int topK;
+    private final double similarityThreshold;
+    private final Supplier<Filter.Expression> filterExpression;
+    private final DocumentRetriever blockingRetriever;
+    private final boolean includeEmbeddings;
+
+    public OpenSearchAsyncDocumentRetriever(OpenSearchAsyncClient asyncClient, EmbeddingModel embeddingModel,
+                                            Scheduler embeddingScheduler, String indexName, int topK,
+                                            double similarityThreshold, Supplier<Filter.Expression> filterExpression,
+                                            DocumentRetriever blockingRetriever, boolean includeEmbeddings) {
+        this.asyncClient = asyncClient;
+        this.embeddingModel = embeddingModel;
+        this.embeddingScheduler = embeddingScheduler;
+        this.indexName = indexName;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.filterExpression = filterExpression;
+        this.blockingRetriever = blockingRetriever;
+        this.includeEmbeddings = includeEmbeddings;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        if (includeEmbeddings) {
+            return retrieveAsync(query).block();
+        }
+        return blockingRetriever.retrieve(query);
+    }
+
+    @Override
+    public Mono<List<Document>> retrieveAsync(Query query) {
+        return Mono.fromCallable(() -> embeddingModel.embed(query.text()))
+                .subscribeOn(embeddingScheduler)
+                .flatMap(embedding -> Mono.fromFuture(() -> search(embedding)))
+                .map(response -> {
+                    List<Document> documents = OpenSearchDocumentMapper.toDocuments(response.hits().hits(), similarityThreshold,
+                            includeEmbeddings);
+                    log.debug("异步检索完成 - index: {}, query: '{}', 命中: {}", indexName, query.text(), documents.size());
+                    return documents;
+                })
+                .onErrorResume(e -> {
+                    log.warn("异步检索失败，回退到阻塞检索 - index: {}, error: {}", indexName, e.getMessage());
+                    return Mono.fromCallable(() -> blockingRetriever.retrieve(query))
+                            .subscribeOn(embeddingScheduler);
+                });
+    }
+
+    @SuppressWarnings("rawtypes")
+    private CompletableFuture<SearchResponse<Map>> search(float[] embedding) {
+        String filter = OpenSearchDocumentMapper.toQueryString(filterExpression == null ? null : filterExpression.get());
+        try {
+            return asyncClient.search(s -> s
+                            .index(indexName)
+                            .size(topK)
+                            .minScore(similarityThreshold)
+                            .source(OpenSearchDocumentMapper.sourceConfig(includeEmbeddings))
+                            .query(OpenSearchDocumentMapper.exactKnnQuery(embedding, filter)),
+                    Map.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
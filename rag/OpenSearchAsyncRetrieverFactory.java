@@ -0,0 +1,59 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.ws16289.daxi.repository.impl.EmbeddingCache;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.function.Supplier;
+
+/**
+ * 异步检索器工厂
+ * embedding.retrieval.async.enabled=true 时，向量检索模式下的检索器额外提供非阻塞路径，
+ * {@link ParallelDocumentRetrieval} 对这类检索器不再占用检索线程池等待 OpenSearch 响应
+ */
+@Component
+public class OpenSearchAsyncRetrieverFactory {
+
+    @Autowired
+    private OpenSearchAsyncClient asyncClient;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private Scheduler ragPipelineScheduler;
+
+    @Value("${embedding.retrieval.async.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为索引创建异步检索器
+     *
+     * @param indexName 规范化后的索引名称
+     * @param topK 返回文档数
+     * @param similarityThreshold 相似度阈值
+     * @param filterExpression 过滤条件，每次检索时获取
+     * @param blockingRetriever 阻塞检索器，用于同步调用和异步请求失败时的回退
+     * @param includeEmbeddings 是否随命中返回候选向量，开启时同步调用也直接请求 OpenSearch
+     * @return 异步检索器
+     */
+    public AsyncDocumentRetriever create(String indexName, int topK, double similarityThreshold,
+                                         Supplier<Filter.Expression> filterExpression,
+                                         DocumentRetriever blockingRetriever, boolean includeEmbeddings) {
+        return new OpenSearchAsyncDocumentRetriever(asyncClient, embeddingCache.wrap(embeddingModel), ragPipelineScheduler, indexName,
+                topK, similarityThreshold, filterExpression, blockingRetriever, includeEmbeddings);
+    }
+}
@@ -0,0 +1,151 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import org.opensearch.client.json.JsonData;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.opensearch.core.search.SourceConfig;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.opensearch.OpenSearchAiSearchFilterExpressionConverter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * OpenSearch 检索结果与 Spring AI Document 之间的转换
+ * 字段布局与 OpenSearchVectorStore 写入的文档一致：content / metadata / embedding
+ */
+public final class OpenSearchDocumentMapper {
+
+    public static final String CONTENT_FIELD = "content";
+    public static final String METADATA_FIELD = "metadata";
+    public static final String EMBEDDING_FIELD = "embedding";
+
+    // 检索时按需把候选文档的向量（float[]）放入 metadata，供 MMR 计算文档间相似度，MMR 返回前移除
+    public static final String EMBEDDING_METADATA_KEY = "candidate_embedding";
+
+    // OpenSearchVectorStore 默认的相似度函数
+    public static final String SPACE_TYPE = "cosinesimil";
+
+    private static final OpenSearchAiSearchFilterExpressionConverter FILTER_CONVERTER =
+            new OpenSearchAiSearchFilterExpressionConverter();
+
+    private OpenSearchDocumentMapper() {
+    }
+
+    /**
+     * 将过滤表达式转换为 query_string 语法
+     *
+     * @return query_string 字符串，表达式为 null 时返回 null
+     */
+    public static String toQueryString(Filter.Expression filterExpression) {
+        return filterExpression == null ? null : FILTER_CONVERTER.convertExpression(filterExpression);
+    }
+
+    /**
+     * 与 OpenSearchVectorStore 相同的精确 kNN 查询：在 query_string 过滤结果上执行 knn_score 脚本，
+     * boost 0.5 把 cosinesimil 的 [0, 2] 得分映射到 [0, 1]，与 similarityThreshold 的取值范围一致
+     *
+     * @param embedding 查询向量
+     * @param filter query_string 过滤条件，为 null 时匹配所有文档
+     */
+    public static Query exactKnnQuery(float[] embedding, String filter) {
+        return Query.of(q -> q.scriptScore(ss -> ss
+                .boost(0.5f)
+                .query(fq -> fq.queryString(qs -> qs.query(filter == null ? "*" : filter)))
+                .script(script -> script.inline(inline -> inline
+                        .source("knn_score")
+                        .lang("knn")
+                        .params(Map.of(
+                                "field", JsonData.of(EMBEDDING_FIELD),
+                                "query_value", JsonData.of(embedding),
+                                "space_type", JsonData.of(SPACE_TYPE)))))));
+    }
+
+    /**
+     * 检索请求的 _source 过滤：需要候选向量时读取完整文档，否则不读取 embedding 字段
+     */
+    public static SourceConfig sourceConfig(boolean includeEmbeddings) {
+        return includeEmbeddings
+                ? SourceConfig.of(src -> src.fetch(true))
+                : SourceConfig.of(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)));
+    }
+
+    /**
+     * 将检索命中转换为 Document，similarityThreshold 以下的命中被丢弃
+     */
+    @SuppressWarnings("rawtypes")
+    public static List<Document> toDocuments(List<Hit<Map>> hits, double similarityThreshold) {
+        return toDocuments(hits, similarityThreshold, false);
+    }
+
+    /**
+     * 将检索命中转换为 Document，similarityThreshold 以下的命中被丢弃
+     *
+     * @param includeEmbeddings 是否把命中中的向量放入 metadata 的 {@link #EMBEDDING_METADATA_KEY}
+     */
+    @SuppressWarnings("rawtypes")
+    public static List<Document> toDocuments(List<Hit<Map>> hits, double similarityThreshold, boolean includeEmbeddings) {
+        return hits.stream()
+                .filter(hit -> hit.score() == null || hit.score() >= similarityThreshold)
+                .map(hit -> toDocument(hit, includeEmbeddings))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static Document toDocument(Hit<Map> hit) {
+        return toDocument(hit, false);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static Document toDocument(Hit<Map> hit, boolean includeEmbedding) {
+        Map source = hit.source();
+        if (source == null) {
+            return null;
+        }
+        Object content = source.get(CONTENT_FIELD);
+        Map<String, Object> metadata = new HashMap<>();
+        if (source.get(METADATA_FIELD) instanceof Map sourceMetadata) {
+            metadata.putAll(sourceMetadata);
+        }
+        if (includeEmbedding) {
+            float[] vector = toVector(source.get(EMBEDDING_FIELD));
+            if (vector != null) {
+                metadata.put(EMBEDDING_METADATA_KEY, vector);
+            }
+        }
+        Double score = hit.score();
+        if (score != null) {
+            // 与 OpenSearchVectorStore 保持一致，distance = 1 - score
+            metadata.put("distance", 1 - score.floatValue());
+        }
+        return Document.builder()
+                .id(hit.id())
+                .text(content == null ? "" : content.toString())
+                .metadata(metadata)
+                .score(score)
+                .build();
+    }
+
+    /**
+     * 将 _source 中的 embedding 字段（JSON 数组）转换为 float[]
+     *
+     * @return 向量，字段缺失或格式不正确时返回 null
+     */
+    public static float[] toVector(Object embedding) {
+        if (!(embedding instanceof List<?> values)) {
+            return null;
+        }
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            if (!(values.get(i) instanceof Number number)) {
+                return null;
+            }
+            vector[i] = number.floatValue();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,93 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.core.SearchResponse;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * OpenSearch 混合检索器
+ * 一次请求同时执行 content 字段的 BM25 匹配和 embedding 字段的 kNN 检索，
+ * 由 search pipeline 中的 normalization-processor 归一化并融合两路得分
+ */
+@Slf4j
+public class OpenSearchHybridDocumentRetriever implements DocumentRetriever {
+
+    private final OpenSearchClient openSearchClient;
+    private final EmbeddingModel embeddingModel;
+    private final String indexName;
+    private final String searchPipeline;
+    private final int topK;
+    private final double similarityThreshold;
+    private final Supplier<Filter.Expression> filterExpression;
+    // 是否随命中返回候选向量（MMR 使用）
+    private final boolean includeEmbeddings;
+
+    public OpenSearchHybridDocumentRetriever(OpenSearchClient openSearchClient, EmbeddingModel embeddingModel,
+                                             String indexName, String searchPipeline, int topK,
+                                             double similarityThreshold, Supplier<Filter.Expression> filterExpression,
+                                             boolean includeEmbeddings) {
+        this.openSearchClient = openSearchClient;
+        this.embeddingModel = embeddingModel;
+        this.indexName = indexName;
+        this.searchPipeline = searchPipeline;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.filterExpression = filterExpression;
+        this.includeEmbeddings = includeEmbeddings;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List<Document> retrieve(Query query) {
+        float[] embedding = embeddingModel.embed(query.text());
+        String filter = OpenSearchDocumentMapper.toQueryString(filterExpression == null ? null : filterExpression.get());
+
+        try {
+            SearchResponse<Map> response = openSearchClient.search(s -> s
+                            .index(indexName)
+                            .pipeline(searchPipeline)
+                            .size(topK)
+                            .source(OpenSearchDocumentMapper.sourceConfig(includeEmbeddings))
+                            .query(q -> q.hybrid(h -> h.queries(List.of(
+                                    // 词法检索：BM25 匹配 content 字段
+                                    org.opensearch.client.opensearch._types.query_dsl.Query.of(lexical -> lexical.bool(b -> {
+                                        b.must(m -> m.match(match -> match
+                                                .field(OpenSearchDocumentMapper.CONTENT_FIELD)
+                                                .query(v -> v.stringValue(query.text()))));
+                                        if (filter != null) {
+                                            b.filter(fq -> fq.queryString(qs -> qs.query(filter)));
+                                        }
+                                        return b;
+                                    })),
+                                    // 语义检索：kNN，过滤条件作为预过滤
+                                    org.opensearch.client.opensearch._types.query_dsl.Query.of(knn -> knn.knn(k -> {
+                                        k.field(OpenSearchDocumentMapper.EMBEDDING_FIELD).vector(embedding).k(topK);
+                                        if (filter != null) {
+                                            k.filter(org.opensearch.client.opensearch._types.query_dsl.Query.of(
+                                                    fq -> fq.queryString(qs -> qs.query(filter))));
+                                        }
+                                        return k;
+                                    }))
+                            )))),
+                    Map.class);
+
+            List<Document> documents = OpenSearchDocumentMapper.toDocuments(response.hits().hits(), similarityThreshold,
+                    includeEmbeddings);
+            log.debug("混合检索完成 - index: {}, query: '{}', 命中: {}", indexName, query.text(), documents.size());
+            return documents;
+        } catch (IOException e) {
+            log.error("混合检索失败 - index: {}", indexName, e);
+            throw new RuntimeException("OpenSearch 混合检索失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.ws16289.daxi.repository.impl.EmbeddingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.generic.Bodies;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.function.Supplier;
+
+/**
+ * 混合检索器工厂
+ * 启动时创建（或覆盖）混合检索使用的 search pipeline，并为指定索引创建 {@link OpenSearchHybridDocumentRetriever}
+ */
+@Slf4j
+@Component
+public class OpenSearchHybridRetrieverFactory {
+
+    @Autowired
+    private OpenSearchClient openSearchClient;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Value("${embedding.retrieval.hybrid.search-pipeline:rag-hybrid-pipeline}")
+    private String searchPipeline;
+
+    @Value("${embedding.retrieval.hybrid.create-pipeline:true}")
+    private boolean createPipeline;
+
+    // 归一化方式：min_max / l2
+    @Value("${embedding.retrieval.hybrid.normalization:min_max}")
+    private String normalization;
+
+    // 融合权重：词法检索、语义检索
+    @Value("${embedding.retrieval.hybrid.lexical-weight:0.3}")
+    private double lexicalWeight;
+
+    @Value("${embedding.retrieval.hybrid.semantic-weight:0.7}")
+    private double semanticWeight;
+
+    // 融合得分阈值，默认不过滤：min-max 归一化后每次检索的最低分都会被压到 0 附近，
+    // 与向量检索的余弦相似度阈值（embedding.retrieval.similarity-threshold）不是同一量纲
+    @Value("${embedding.retrieval.hybrid.similarity-threshold:0}")
+    private double similarityThreshold;
+
+    @PostConstruct
+    public void init() {
+        if (!createPipeline) {
+            return;
+        }
+        String body = """
+                {
+                  "description": "RAG hybrid search: normalize and combine BM25 and kNN scores",
+                  "phase_results_processors": [
+                    {
+                      "normalization-processor": {
+                        "normalization": { "technique": "%s" },
+                        "combination": {
+                          "technique": "arithmetic_mean",
+                          "parameters": { "weights": [%s, %s] }
+                        }
+                      }
+                    }
+                  ]
+                }
+                """.formatted(normalization, lexicalWeight, semanticWeight);
+        try (var response = openSearchClient.generic().execute(Requests.builder()
+                .method("PUT")
+                .endpoint("/_search/pipeline/" + searchPipeline)
+                .body(Bodies.json(body))
+                .build())) {
+            if (response.getStatus() >= 300) {
+                log.warn("创建混合检索 search pipeline 失败 - status: {}", response.getStatus());
+            } else {
+                log.info("混合检索 search pipeline 已就绪: {}", searchPipeline);
+            }
+        } catch (Exception e) {
+            // OpenSearch 不可用时不影响启动，混合检索请求会在执行时报错
+            log.warn("创建混合检索 search pipeline 失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 为索引创建混合检索器
+     *
+     * @param indexName 规范化后的索引名称
+     * @param topK 返回文档数
+     * @param filterExpression 过滤条件，每次检索时获取
+     * @param includeEmbeddings 是否随命中返回候选向量
+     * @return 混合检索器
+     */
+    public DocumentRetriever create(String indexName, int topK, Supplier<Filter.Expression> filterExpression,
+                                    boolean includeEmbeddings) {
+        return new OpenSearchHybridDocumentRetriever(openSearchClient, embeddingCache.wrap(embeddingModel), indexName, searchPipeline,
+                topK, similarityThreshold, filterExpression, includeEmbeddings);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多查询并行检索
+ * 在专用的检索线程池上执行 retriever，每个查询有独立的截止时间，
+ * 超时或失败的查询被丢弃，返回其余查询的部分结果
+ */
+@Slf4j
+@Component
+public class ParallelDocumentRetrieval {
+
+    @Autowired
+    @Qualifier("ragRetrievalExecutor")
+    private ExecutorService retrievalExecutor;
+
+    @Value("${embedding.retrieval.pipeline.timeout.retrieval:5s}")
+    private Duration queryDeadline;
+
+    private Scheduler retrievalScheduler;
+
+    @PostConstruct
+    public void init() {
+        this.retrievalScheduler = Schedulers.fromExecutorService(retrievalExecutor, "rag-retrieval");
+    }
+
+    /**
+     * 非阻塞式并行检索，每个查询经 {@link #retrieve(DocumentRetriever, Query)} 独立超时
+     *
+     * @param retriever 文档检索器
+     * @param queries 查询列表
+     * @return Map<Query, List<Document>>，按查询原始顺序，不包含超时或失败的查询
+     */
+    public Mono<Map<Query, List<Document>>> retrieveAllAsync(DocumentRetriever retriever, List<Query> queries) {
+        return Flux.fromIterable(queries)
+                .flatMapSequential(q -> retrieve(retriever, q)
+                        .map(docs -> Map.entry(q, docs)))
+                .collect(LinkedHashMap::new, (map, entry) -> map.putIfAbsent(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * 单个查询的非阻塞检索，超时或失败时返回空
+     * {@link AsyncDocumentRetriever} 直接使用其非阻塞路径，其余检索器在检索线程池上执行
+     */
+    public Mono<List<Document>> retrieve(DocumentRetriever retriever, Query query) {
+        Mono<List<Document>> retrieval = retriever instanceof AsyncDocumentRetriever async
+                ? async.retrieveAsync(query)
+                : Mono.fromCallable(() -> retriever.retrieve(query)).subscribeOn(retrievalScheduler);
+        return retrieval
+                .timeout(queryDeadline)
+                .doOnNext(docs -> log.debug("  查询 '{}' 检索到 {} 个文档", query.text(), docs.size()))
+                .onErrorResume(e -> {
+                    if (e instanceof TimeoutException) {
+                        log.warn("查询 '{}' 检索超时 ({})，返回部分结果", query.text(), queryDeadline);
+                    } else {
+                        log.warn("查询 '{}' 检索失败: {}", query.text(), e.getMessage());
+                    }
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,206 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ws16289.daxi.util.LocalTtlCache;
+import com.ws16289.daxi.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.expansion.QueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * LLM 查询转换结果缓存（Rewrite / Compression / MultiQuery 扩展）
+ * 键为 转换类型 + 模型 + 规范化后的查询文本；L1 为本地 LRU + TTL 缓存，L2 为可选的 Redis 缓存
+ * 只缓存不依赖对话历史和上下文的查询
+ */
+@Slf4j
+@Component
+public class QueryTransformationCache {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ChatModel chatModel;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${rag.transform.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.transform.cache.local.max-size:10000}")
+    private int localMaxSize;
+
+    @Value("${rag.transform.cache.local.ttl:1h}")
+    private Duration localTtl;
+
+    @Value("${rag.transform.cache.redis.enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${rag.transform.cache.redis.ttl:24h}")
+    private Duration redisTtl;
+
+    @Value("${rag.transform.cache.prefix:rag:transform:}")
+    private String cachePrefix;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LocalTtlCache<String, List<String>> localCache;
+
+    private final SingleFlight<String, List<String>> inFlightLoads = new SingleFlight<>();
+
+    private String modelId;
+
+    @PostConstruct
+    public void init() {
+        this.localCache = new LocalTtlCache<>(localMaxSize, localTtl);
+        ChatOptions options = chatModel.getDefaultOptions();
+        this.modelId = options != null && options.getModel() != null
+                ? options.getModel()
+                : chatModel.getClass().getSimpleName();
+        log.info("查询转换缓存初始化 - enabled: {}, model: {}, redis: {}", enabled, modelId, redisEnabled);
+    }
+
+    /**
+     * 为 QueryTransformer 添加缓存
+     *
+     * @param type 转换类型，如 rewrite / compression
+     * @param delegate 实际执行转换的 QueryTransformer
+     * @return 带缓存的 QueryTransformer
+     */
+    public QueryTransformer wrapTransformer(String type, QueryTransformer delegate) {
+        return query -> {
+            List<String> texts = lookup(type, query, () -> List.of(delegate.transform(query).text()));
+            return query.mutate().text(texts.get(0)).build();
+        };
+    }
+
+    /**
+     * 为 QueryExpander 添加缓存
+     *
+     * @param type 扩展类型，如 multi-query
+     * @param delegate 实际执行扩展的 QueryExpander
+     * @return 带缓存的 QueryExpander
+     */
+    public QueryExpander wrapExpander(String type, QueryExpander delegate) {
+        return query -> lookup(type, query, () -> delegate.expand(query).stream().map(Query::text).toList())
+                .stream()
+                .map(text -> query.mutate().text(text).build())
+                .toList();
+    }
+
+    private List<String> lookup(String type, Query query, Supplier<List<String>> loader) {
+        // 依赖对话历史或上下文的查询，转换结果不可复用
+        if (!enabled || !query.history().isEmpty() || !query.context().isEmpty()) {
+            return loader.get();
+        }
+
+        String key = buildKey(type, query.text());
+        List<String> cached = localCache.get(key);
+        if (cached != null) {
+            counter(type, "l1_hit").increment();
+            log.debug("查询转换缓存命中(L1) - type: {}, query: {}", type, query.text());
+            return cached;
+        }
+
+        cached = readRedis(key);
+        if (cached != null) {
+            counter(type, "l2_hit").increment();
+            log.debug("查询转换缓存命中(L2) - type: {}, query: {}", type, query.text());
+            localCache.put(key, cached);
+            return cached;
+        }
+
+        // 未命中时，相同查询的并发请求只调用一次 LLM
+        SingleFlight.Result<List<String>> result = inFlightLoads.execute(key, () -> {
+            List<String> loaded = loader.get();
+            if (loaded != null && !loaded.isEmpty()) {
+                localCache.put(key, loaded);
+                writeRedis(key, loaded);
+            }
+            return loaded;
+        });
+        counter(type, result.shared() ? "shared" : "miss").increment();
+        return result.value();
+    }
+
+    private List<String> readRedis(String key) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(key);
+            return value == null ? null : objectMapper.readValue(value, new TypeReference<List<String>>() {});
+        } catch (Exception e) {
+            log.warn("读取查询转换缓存(Redis)失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, List<String> texts) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(texts),
+                    redisTtl.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入查询转换缓存(Redis)失败: {}", e.getMessage());
+        }
+    }
+
+    private Counter counter(String type, String result) {
+        return Counter.builder("rag.transform.cache.requests")
+                .description("LLM 查询转换缓存访问次数")
+                .tag("type", type)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private String buildKey(String type, String text) {
+        return cachePrefix + type + ":" + modelId + ":" + sha256(normalize(text));
+    }
+
+    /**
+     * 规范化查询文本：去除首尾空白和结尾标点，合并连续空白，转小写
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim()
+                .replaceAll("\\s+", " ")
+                .replaceAll("[?？!！。.,，;；\\s]+$", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个 RAG 请求的截止时间预算
+ * 从请求开始到开始生成回答之间的所有阶段共享同一个预算，每个阶段的超时不超过剩余预算；
+ * 被跳过或超时降级的阶段记录在 skippedStages 中。
+ * 调用方可以通过 Reactor Context（键为 RagDeadline.class）传入自己的实例，
+ * 在流结束后读取 {@link #skippedStages()} 标记响应。
+ * 预构建的 Advisor 跨请求共享，请求的截止时间通过 Advisor 参数 {@link #CONTEXT_KEY} 传入，
+ * RetrievalAugmentationAdvisor 会把它带入 Query.context
+ */
+public final class RagDeadline {
+
+    /**
+     * Advisor 参数 / Query.context 中的键
+     */
+    public static final String CONTEXT_KEY = "rag_deadline";
+
+    private final long deadlineNanos;
+    private final Set<String> skippedStages = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private RagDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从当前时刻开始计算的截止时间
+     *
+     * @param budget 总预算
+     */
+    public static RagDeadline after(Duration budget) {
+        return new RagDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * 从 Query.context 中取出请求的截止时间，没有时（调用方未传入）按 fallbackBudget 新建
+     */
+    public static RagDeadline from(Map<String, Object> context, Duration fallbackBudget) {
+        return context.get(CONTEXT_KEY) instanceof RagDeadline deadline ? deadline : after(fallbackBudget);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 阶段的实际超时：阶段自身超时与剩余预算中的较小值
+     */
+    public Duration timeoutFor(Duration stageTimeout) {
+        Duration remaining = remaining();
+        return stageTimeout.compareTo(remaining) < 0 ? stageTimeout : remaining;
+    }
+
+    void markSkipped(String stage) {
+        skippedStages.add(stage);
+    }
+
+    public boolean isSkipped(String stage) {
+        return skippedStages.contains(stage);
+    }
+
+    /**
+     * 被跳过或超时降级的阶段，按发生顺序
+     */
+    public List<String> skippedStages() {
+        synchronized (skippedStages) {
+            return List.copyOf(skippedStages);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ws16289.daxi.config.ai;
+
+import com.ws16289.daxi.service.impl.ai.rag.ReciprocalRankFusionDocumentJoiner;
+import com.ws16289.daxi.service.impl.ai.rag.StreamCoalescingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.springframework.ai.rag.retrieval.join.DocumentJoiner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RAG 查询流水线配置
+ * 提供流水线各阶段（Transform / Expand / 检索 / 增强）运行所需的线程资源
+ */
+@Slf4j
+@Configuration
+public class RagPipelineConfig {
+
+    /**
+     * RAG 流水线调度器
+     * 有界弹性线程池，阻塞的 LLM / OpenSearch 调用在此执行，不占用 Servlet/Netty 线程
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler ragPipelineScheduler(
+            @Value("${embedding.retrieval.pipeline.thread-cap:32}") int threadCap,
+            @Value("${embedding.retrieval.pipeline.queued-task-cap:1000}") int queuedTaskCap) {
+        log.info("创建 RAG 流水线调度器 - threadCap: {}, queuedTaskCap: {}", threadCap, queuedTaskCap);
+        return Schedulers.newBoundedElastic(threadCap, queuedTaskCap, "rag-pipeline");
+    }
+
+    /**
+     * 向量检索专用线程池，替代 parallelStream 使用的 ForkJoinPool.commonPool
+     * type=virtual 时每个检索任务使用一个虚拟线程；type=platform 时使用有界平台线程池，队列满时拒绝任务
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService ragRetrievalExecutor(
+            @Value("${embedding.retrieval.executor.type:virtual}") String type,
+            @Value("${embedding.retrieval.executor.pool-size:16}") int poolSize,
+            @Value("${embedding.retrieval.executor.queue-capacity:500}") int queueCapacity) {
+        if ("virtual".equalsIgnoreCase(type)) {
+            log.info("创建检索线程池 - 虚拟线程");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-retrieval-", 0).factory());
+        }
+
+        log.info("创建检索线程池 - 平台线程, poolSize: {}, queueCapacity: {}", poolSize, queueCapacity);
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "rag-retrieval-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 多查询检索结果合并器
+     * 使用 RRF 融合各查询的排名并去重，限制进入 Prompt 的文档数量
+     */
+    @Bean
+    public DocumentJoiner ragDocumentJoiner(
+            @Value("${embedding.retrieval.join.rrf-k:60}") int rankConstant,
+            @Value("${embedding.retrieval.join.max-documents:8}") int maxDocuments) {
+        log.info("创建 RRF 文档合并器 - k: {}, maxDocuments: {}", rankConstant, maxDocuments);
+        return new ReciprocalRankFusionDocumentJoiner(rankConstant, maxDocuments);
+    }
+
+    /**
+     * OpenSearch 异步客户端
+     * 与同步客户端共用同一个 transport（连接池、认证、序列化配置），不额外建立连接
+     */
+    @Bean
+    public OpenSearchAsyncClient openSearchAsyncClient(OpenSearchClient openSearchClient) {
+        return new OpenSearchAsyncClient(openSearchClient._transport());
+    }
+
+    /**
+     * 流式输出合并配置
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "rag.stream")
+    public StreamCoalescingProperties streamCoalescingProperties() {
+        return new StreamCoalescingProperties();
+    }
+}
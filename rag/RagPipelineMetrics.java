@@ -0,0 +1,183 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.ws16289.daxi.repository.OpenSearchStoreRepository;
+import com.ws16289.daxi.util.IndexNames;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.rag.preretrieval.query.expansion.QueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * RAG 流水线指标
+ * 各阶段耗时（rewrite / compression / expansion / retrieval / join / augmentation）、
+ * 首 Token 延迟和流式输出总耗时，统一带 vector_store 和 variant 标签，通过 actuator 暴露。
+ * vector_store 标签只取已加载 VectorStore 的索引的规范化名称，其余（用户传入的无效名称）统一为 unknown，
+ * 避免带百分位直方图的 Timer 按用户输入无限增长
+ */
+@Slf4j
+@Component
+public class RagPipelineMetrics {
+
+    public static final String STAGE_TIMER = "rag.pipeline.stage";
+    public static final String TTFT_TIMER = "rag.pipeline.ttft";
+    public static final String STREAM_TIMER = "rag.pipeline.stream.duration";
+    public static final String REQUEST_COUNTER = "rag.pipeline.requests";
+    public static final String UNKNOWN_VECTOR_STORE = "unknown";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OpenSearchStoreRepository openSearchStoreRepository;
+
+    // 已确认加载的索引名称（规范化后），数量以索引数为上限
+    private final Set<String> knownVectorStores = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 指标中的 vector_store 标签值：已加载 VectorStore 的索引使用规范化名称，否则为 {@link #UNKNOWN_VECTOR_STORE}
+     */
+    public String vectorStoreTag(String vectorStore) {
+        String normalized;
+        try {
+            normalized = IndexNames.normalize(vectorStore);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_VECTOR_STORE;
+        }
+        if (knownVectorStores.contains(normalized)) {
+            return normalized;
+        }
+        // 只查已加载的 VectorStore，不访问 OpenSearch；尚未加载的索引记为 unknown
+        if (openSearchStoreRepository.getAllVectorStores().containsKey(normalized)) {
+            knownVectorStores.add(normalized);
+            return normalized;
+        }
+        return UNKNOWN_VECTOR_STORE;
+    }
+
+    /**
+     * 记录阻塞阶段耗时
+     */
+    public <T> T timeStage(String stage, String vectorStore, String variant, Supplier<T> task) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return task.get();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            recordStage(stage, vectorStore, variant, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 记录非阻塞阶段耗时，从订阅开始计时
+     */
+    public <T> Mono<T> timeStage(String stage, String vectorStore, String variant, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicReference<String> errorOutcome = new AtomicReference<>();
+            return mono
+                    .doOnError(e -> errorOutcome.set(e instanceof TimeoutException ? "timeout" : "error"))
+                    .doFinally(signal -> recordStage(stage, vectorStore, variant,
+                            errorOutcome.get() != null ? errorOutcome.get() : outcomeOf(signal),
+                            System.nanoTime() - start));
+        });
+    }
+
+    public QueryTransformer instrument(String stage, String vectorStore, String variant, QueryTransformer delegate) {
+        return query -> timeStage(stage, vectorStore, variant, () -> delegate.transform(query));
+    }
+
+    public QueryExpander instrument(String stage, String vectorStore, String variant, QueryExpander delegate) {
+        return query -> timeStage(stage, vectorStore, variant, () -> delegate.expand(query));
+    }
+
+    public DocumentRetriever instrument(String vectorStore, String variant, DocumentRetriever delegate) {
+        DocumentRetriever blocking = query -> timeStage("retrieval", vectorStore, variant, () -> delegate.retrieve(query));
+        if (delegate instanceof AsyncDocumentRetriever async) {
+            return AsyncDocumentRetriever.of(blocking,
+                    query -> timeStage("retrieval", vectorStore, variant, async.retrieveAsync(query)));
+        }
+        return blocking;
+    }
+
+    /**
+     * 记录流式输出的首 Token 延迟和总耗时
+     *
+     * @param stream 模型输出流
+     * @param vectorStore 索引名称
+     * @param variant 流水线变体
+     * @param requestStartNanos 请求开始时间（System.nanoTime），首 Token 延迟包含检索等前置阶段
+     * @return 带指标的输出流
+     */
+    public Flux<String> instrumentStream(Flux<String> stream, String vectorStore, String variant, long requestStartNanos) {
+        counter(vectorStore, variant).increment();
+        return Flux.defer(() -> {
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            return stream
+                    .doOnNext(token -> {
+                        if (firstToken.compareAndSet(true, false)) {
+                            timer(TTFT_TIMER, "首 Token 延迟", vectorStore, variant, "success")
+                                    .record(System.nanoTime() - requestStartNanos, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doFinally(signal -> timer(STREAM_TIMER, "流式输出总耗时", vectorStore, variant, outcomeOf(signal))
+                            .record(System.nanoTime() - requestStartNanos, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private void recordStage(String stage, String vectorStore, String variant, String outcome, long nanos) {
+        Timer.builder(STAGE_TIMER)
+                .description("RAG 流水线阶段耗时")
+                .tag("stage", stage)
+                .tag("vector_store", vectorStoreTag(vectorStore))
+                .tag("variant", variant)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, String description, String vectorStore, String variant, String outcome) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("vector_store", vectorStoreTag(vectorStore))
+                .tag("variant", variant)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String vectorStore, String variant) {
+        return Counter.builder(REQUEST_COUNTER)
+                .description("RAG 请求数")
+                .tag("vector_store", vectorStoreTag(vectorStore))
+                .tag("variant", variant)
+                .register(meterRegistry);
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case CANCEL -> "cancelled";
+            default -> "error";
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.ws16289.daxi.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * RAG 检索请求合并
+ * 相同 (vectorStoreName, 规范化查询, 过滤条件, 流水线变体) 的并发请求共享同一次 Transform / Embedding / 检索，
+ * 生成回答仍由每个请求各自完成（带各自的对话记忆）
+ */
+@Slf4j
+@Component
+public class RagRequestCoalescer {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RagStageGuard stageGuard;
+
+    @Value("${rag.coalesce.enabled:true}")
+    private boolean enabled;
+
+    private final SingleFlight<RetrievalKey, RetrievalOutcome> retrievals = new SingleFlight<>();
+
+    /**
+     * 合并键
+     */
+    public record RetrievalKey(String vectorStoreName, String normalizedQuery, String filter, String variant) {
+    }
+
+    /**
+     * 阻塞式合并检索
+     *
+     * @param vectorStoreName 索引名称
+     * @param query 用户查询
+     * @param variant 流水线变体
+     * @param retrieval 检索过程
+     * @return 检索结果，包含执行检索的请求中被降级的阶段
+     */
+    public RetrievalOutcome coalesce(String vectorStoreName, String query, String variant,
+                                     Supplier<RetrievalOutcome> retrieval) {
+        return coalesce(key(vectorStoreName, query, null, variant), retrieval);
+    }
+
+    /**
+     * 非阻塞合并检索，语义同 {@link #coalesce(String, String, String, Supplier)}
+     */
+    public Mono<RetrievalOutcome> coalesceAsync(String vectorStoreName, String query, String variant,
+                                                Supplier<Mono<RetrievalOutcome>> retrieval) {
+        if (!enabled) {
+            return Mono.defer(retrieval);
+        }
+        return retrievals.executeAsync(key(vectorStoreName, query, null, variant), () -> {
+            counter(variant, "leader").increment();
+            return retrieval.get();
+        }, () -> {
+            counter(variant, "shared").increment();
+            log.debug("复用进行中的检索 - vectorStore: {}, variant: {}, query: {}", vectorStoreName, variant, query);
+        });
+    }
+
+    /**
+     * 为 DocumentRetriever 添加请求合并，用于 RetrievalAugmentationAdvisor 内部的检索
+     * RetrievalAugmentationAdvisor 会把 Advisor 参数（如 chat_memory_conversation_id）放入查询上下文，
+     * 这些参数不影响检索结果，合并键只取查询上下文中的过滤条件；检索器自身配置的默认过滤条件对同一变体相同。
+     * 执行检索的请求检索超时时，共享结果的请求同样在自己的 RagDeadline 上标记 retrieval 被降级
+     */
+    public DocumentRetriever wrap(DocumentRetriever delegate, String vectorStoreName, String variant) {
+        return query -> {
+            Object filter = query.context().get(VectorStoreDocumentRetriever.FILTER_EXPRESSION);
+            Object deadline = query.context().get(RagDeadline.CONTEXT_KEY);
+            RetrievalOutcome outcome = coalesce(key(vectorStoreName, query.text(), filter, variant), () -> {
+                List<Document> documents = delegate.retrieve(query);
+                boolean skipped = deadline instanceof RagDeadline leader && leader.isSkipped("retrieval");
+                return new RetrievalOutcome(documents, skipped ? List.of("retrieval") : List.of());
+            });
+            if (deadline instanceof RagDeadline requestDeadline) {
+                stageGuard.inherit(outcome, vectorStoreName, variant, requestDeadline);
+            }
+            return outcome.documents();
+        };
+    }
+
+    private RetrievalOutcome coalesce(RetrievalKey key, Supplier<RetrievalOutcome> retrieval) {
+        if (!enabled) {
+            return retrieval.get();
+        }
+        SingleFlight.Result<RetrievalOutcome> result = retrievals.execute(key, retrieval);
+        counter(key.variant(), result.shared() ? "shared" : "leader").increment();
+        if (result.shared()) {
+            log.debug("复用进行中的检索 - vectorStore: {}, variant: {}, query: {}",
+                    key.vectorStoreName(), key.variant(), key.normalizedQuery());
+        }
+        return result.value();
+    }
+
+    private RetrievalKey key(String vectorStoreName, String query, Object filter, String variant) {
+        return new RetrievalKey(vectorStoreName, QueryTransformationCache.normalize(query),
+                filter == null ? "" : filter.toString(), variant);
+    }
+
+    private Counter counter(String variant, String result) {
+        return Counter.builder("rag.coalesce.requests")
+                .description("RAG 检索请求合并次数")
+                .tag("variant", variant)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
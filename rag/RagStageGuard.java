@@ -0,0 +1,132 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.preretrieval.query.expansion.QueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * RAG 可选阶段的超时保护与降级
+ * 阶段超时或失败时返回降级结果而不是让整个请求失败：
+ * Rewrite / Compression 超时使用原查询，扩展超时只用原查询检索，检索超时返回空文档。
+ * 剩余预算不足 min-stage-budget 时可选阶段直接跳过，不再发起调用
+ */
+@Slf4j
+@Component
+public class RagStageGuard {
+
+    public static final String SKIPPED_COUNTER = "rag.pipeline.stage.skipped";
+
+    @Autowired
+    private Scheduler ragPipelineScheduler;
+
+    @Autowired
+    private RagPipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 剩余预算低于该值时不再启动可选阶段
+    @Value("${embedding.retrieval.pipeline.min-stage-budget:500ms}")
+    private Duration minStageBudget;
+
+    /**
+     * 在截止时间预算内执行可选阶段，超时、失败或预算不足时返回降级结果
+     *
+     * @param stage 阶段名称
+     * @param vectorStore 索引名称
+     * @param variant 流水线变体
+     * @param deadline 请求截止时间
+     * @param stageTimeout 阶段自身的超时
+     * @param task 阶段任务（阻塞调用，运行在 RAG 流水线调度器上）
+     * @param fallback 降级结果
+     * @return 阶段结果或降级结果
+     */
+    public <T> Mono<T> optional(String stage, String vectorStore, String variant, RagDeadline deadline,
+                                Duration stageTimeout, Callable<T> task, T fallback) {
+        return Mono.defer(() -> {
+            if (deadline.remaining().compareTo(minStageBudget) < 0) {
+                skip(stage, vectorStore, variant, deadline, "剩余预算不足 " + deadline.remaining().toMillis() + "ms");
+                return Mono.just(fallback);
+            }
+            Duration timeout = deadline.timeoutFor(stageTimeout);
+            Mono<T> mono = Mono.fromCallable(task)
+                    .subscribeOn(ragPipelineScheduler)
+                    .timeout(timeout);
+            return pipelineMetrics.timeStage(stage, vectorStore, variant, mono)
+                    .onErrorResume(e -> {
+                        skip(stage, vectorStore, variant, deadline, e instanceof TimeoutException
+                                ? "超时 (" + timeout.toMillis() + "ms)"
+                                : "失败: " + e.getMessage());
+                        return Mono.just(fallback);
+                    });
+        });
+    }
+
+    /**
+     * 为 Advisor 中的 QueryTransformer 添加超时保护，超时或失败时返回原查询
+     * Advisor 是预构建并跨请求共享的，请求的截止时间从 Query.context 中读取（{@link RagDeadline#CONTEXT_KEY}），
+     * 降级的阶段记录在该请求的 RagDeadline 上
+     */
+    public QueryTransformer guard(String stage, String vectorStore, String variant, Duration timeout,
+                                  QueryTransformer delegate) {
+        return query -> optional(stage, vectorStore, variant, RagDeadline.from(query.context(), timeout), timeout,
+                () -> delegate.transform(query), query).block();
+    }
+
+    /**
+     * 为 Advisor 中的 QueryExpander 添加超时保护，超时或失败时只使用原查询
+     */
+    public QueryExpander guard(String stage, String vectorStore, String variant, Duration timeout,
+                               QueryExpander delegate) {
+        return query -> optional(stage, vectorStore, variant, RagDeadline.from(query.context(), timeout), timeout,
+                () -> delegate.expand(query), List.of(query)).block();
+    }
+
+    /**
+     * 为 Advisor 中的 DocumentRetriever 添加超时保护，超时或失败时返回空文档
+     */
+    public DocumentRetriever guard(String vectorStore, String variant, Duration timeout, DocumentRetriever delegate) {
+        return query -> optional("retrieval", vectorStore, variant, RagDeadline.from(query.context(), timeout), timeout,
+                () -> delegate.retrieve(query), List.<Document>of()).block();
+    }
+
+    /**
+     * 共享合并检索结果的请求标记执行检索的请求中被降级的阶段，已标记的阶段不重复计数
+     */
+    public void inherit(RetrievalOutcome outcome, String vectorStore, String variant, RagDeadline deadline) {
+        for (String stage : outcome.skippedStages()) {
+            if (!deadline.isSkipped(stage)) {
+                skip(stage, vectorStore, variant, deadline, "合并的检索中已降级");
+            }
+        }
+    }
+
+    /**
+     * 记录被跳过的阶段
+     */
+    public void skip(String stage, String vectorStore, String variant, RagDeadline deadline, String reason) {
+        deadline.markSkipped(stage);
+        Counter.builder(SKIPPED_COUNTER)
+                .description("因超时、失败或预算不足被跳过的 RAG 阶段")
+                .tag("stage", stage)
+                .tag("vector_store", pipelineMetrics.vectorStoreTag(vectorStore))
+                .tag("variant", variant)
+                .register(meterRegistry)
+                .increment();
+        log.warn("阶段 {} 已降级 - vectorStore: {}, variant: {}, 原因: {}", stage, vectorStore, variant, reason);
+    }
+}
@@ -0,0 +1,113 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.join.DocumentJoiner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 Reciprocal Rank Fusion 的文档合并器
+ * 同一文档片段按 id 或内容哈希去重，融合得分为各查询结果中 1 / (k + rank) 之和，
+ * 按融合得分排序后最多返回 maxDocuments 个文档
+ */
+@Slf4j
+public class ReciprocalRankFusionDocumentJoiner implements DocumentJoiner {
+
+    /**
+     * 融合得分写入文档元数据的键
+     */
+    public static final String RRF_SCORE_METADATA_KEY = "rrf_score";
+
+    private final int rankConstant;
+    private final int maxDocuments;
+
+    /**
+     * @param rankConstant RRF 常数 k，越大则排名靠后的文档权重下降越平缓，通常取 60
+     * @param maxDocuments 合并后最多返回的文档数
+     */
+    public ReciprocalRankFusionDocumentJoiner(int rankConstant, int maxDocuments) {
+        if (rankConstant < 0) {
+            throw new IllegalArgumentException("rankConstant must not be negative: " + rankConstant);
+        }
+        if (maxDocuments <= 0) {
+            throw new IllegalArgumentException("maxDocuments must be positive: " + maxDocuments);
+        }
+        this.rankConstant = rankConstant;
+        this.maxDocuments = maxDocuments;
+    }
+
+    private static final class FusedDocument {
+        Document document;
+        double score;
+
+        FusedDocument(Document document) {
+            this.document = document;
+        }
+    }
+
+    @Override
+    public List<Document> join(Map<Query, List<List<Document>>> documentsForQuery) {
+        // 同一片段可能 id 相同，也可能是重复上传导致 id 不同但内容相同，两者任一命中即视为同一文档
+        Map<String, FusedDocument> byId = new HashMap<>();
+        Map<String, FusedDocument> byContentHash = new HashMap<>();
+        List<FusedDocument> fused = new ArrayList<>();
+        int inputCount = 0;
+
+        for (List<List<Document>> documentLists : documentsForQuery.values()) {
+            for (List<Document> documents : documentLists) {
+                for (int rank = 0; rank < documents.size(); rank++) {
+                    Document document = documents.get(rank);
+                    inputCount++;
+                    String id = document.getId();
+                    String contentHash = QueryTransformationCache.sha256(document.getText() == null ? "" : document.getText());
+
+                    FusedDocument entry = id != null ? byId.get(id) : null;
+                    if (entry == null) {
+                        entry = byContentHash.get(contentHash);
+                    }
+                    if (entry == null) {
+                        entry = new FusedDocument(document);
+                        fused.add(entry);
+                    }
+                    if (id != null) {
+                        byId.putIfAbsent(id, entry);
+                    }
+                    byContentHash.putIfAbsent(contentHash, entry);
+
+                    entry.score += 1.0d / (rankConstant + rank + 1);
+                    // 保留原始相似度最高的文档实例
+                    if (scoreOf(document) > scoreOf(entry.document)) {
+                        entry.document = document;
+                    }
+                }
+            }
+        }
+
+        List<FusedDocument> ranked = new ArrayList<>(fused);
+        ranked.sort(Comparator.comparingDouble((FusedDocument f) -> f.score).reversed());
+
+        List<Document> result = new ArrayList<>(Math.min(maxDocuments, ranked.size()));
+        for (FusedDocument entry : ranked.subList(0, Math.min(maxDocuments, ranked.size()))) {
+            Map<String, Object> metadata = new LinkedHashMap<>(entry.document.getMetadata());
+            metadata.put(RRF_SCORE_METADATA_KEY, entry.score);
+            result.add(entry.document.mutate()
+                    .metadata(metadata)
+                    .score(entry.score)
+                    .build());
+        }
+
+        log.debug("RRF 合并完成 - 输入文档数: {}, 去重后: {}, 输出: {}", inputCount, fused.size(), result.size());
+        return result;
+    }
+
+    private static double scoreOf(Document document) {
+        return document.getScore() != null ? document.getScore() : Double.NEGATIVE_INFINITY;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 合并检索的结果
+ * 检索只由合并组中的第一个请求执行，其截止时间内被降级的阶段随文档一起返回，
+ * 共享结果的每个请求据此标记自己的 {@link RagDeadline}
+ *
+ * @param documents 检索到的文档
+ * @param skippedStages 执行检索的请求中被跳过或超时降级的阶段
+ */
+public record RetrievalOutcome(List<Document> documents, List<String> skippedStages) {
+
+    public static RetrievalOutcome of(List<Document> documents) {
+        return new RetrievalOutcome(documents, List.of());
+    }
+
+    public static RetrievalOutcome of(List<Document> documents, RagDeadline deadline) {
+        return new RetrievalOutcome(documents, deadline.skippedStages());
+    }
+
+    public boolean retrievalSkipped() {
+        return skippedStages.contains("retrieval");
+    }
+}
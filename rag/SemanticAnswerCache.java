@@ -0,0 +1,370 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ws16289.daxi.repository.impl.EmbeddingCache;
+import com.ws16289.daxi.repository.impl.VectorStoreWriteEvent;
+import com.ws16289.daxi.util.IndexNames;
+import com.ws16289.daxi.util.LocalTtlCache;
+import com.ws16289.daxi.util.VectorCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.DefaultChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 语义答案缓存
+ * 语义相同的问题直接回放已生成的答案，跳过检索和生成。
+ * 作用域为 (索引, 流水线变体, ChatClient 指纹)：Redis 中每个作用域一个列表，元素为 {查询, 归一化后的查询向量, 答案}，
+ * 查询向量与缓存条目的余弦相似度达到阈值即命中；向量按 float16 编码存储。
+ * 本地保留短 TTL 的镜像（列表和索引版本号），避免每次请求都读取 Redis，本实例写入的新条目直接追加到镜像中。
+ * 索引写入时递增该索引的版本号，旧版本的条目不再被读取，随 TTL 过期。
+ * 只有没有对话历史的请求才参与缓存，回答依赖上下文的多轮对话不命中也不写入。
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private ChatMemory chatMemory;
+
+    @Autowired
+    private Scheduler ragPipelineScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${rag.answer.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.answer.cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    // 每个作用域最多保留的条目数，超出时淘汰最早写入的条目
+    @Value("${rag.answer.cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${rag.answer.cache.ttl:6h}")
+    private Duration ttl;
+
+    // 本地镜像的有效期，决定其他实例写入的新答案多久后可见
+    @Value("${rag.answer.cache.local.ttl:30s}")
+    private Duration localTtl;
+
+    @Value("${rag.answer.cache.local.max-scopes:256}")
+    private int localMaxScopes;
+
+    // 回放时每个片段的字符数
+    @Value("${rag.answer.cache.replay-chunk-size:16}")
+    private int replayChunkSize;
+
+    @Value("${rag.answer.cache.prefix:rag:answer:}")
+    private String cachePrefix;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LocalTtlCache<String, List<CachedAnswer>> localMirror;
+
+    // 索引名称 → 版本号
+    private LocalTtlCache<String, String> localGenerations;
+
+    /**
+     * 缓存条目
+     *
+     * @param query 规范化后的查询文本
+     * @param embedding 单位长度的查询向量
+     * @param answer 完整答案
+     */
+    public record CachedAnswer(String query, float[] embedding, String answer) {
+    }
+
+    /**
+     * Redis 中的存储格式，向量为 float16 Base64（1536 维约 4KB，JSON 数组约 25KB）
+     */
+    private record StoredAnswer(String query, String embedding, String answer) {
+    }
+
+    @PostConstruct
+    public void init() {
+        this.localMirror = new LocalTtlCache<>(localMaxScopes, localTtl);
+        this.localGenerations = new LocalTtlCache<>(localMaxScopes, localTtl);
+        this.embeddingModel = embeddingCache.wrap(embeddingModel);
+        log.info("语义答案缓存初始化 - enabled: {}, threshold: {}, ttl: {}", enabled, similarityThreshold, ttl);
+    }
+
+    /**
+     * 先查缓存，命中则回放答案，未命中则调用 generator 生成并在完整输出后写入缓存；
+     * 生成完成后 cacheable 返回 false 时不写入缓存，用于阶段超时降级（如检索超时后不带文档回答）的请求，
+     * 避免降级的答案被相似问题复用
+     *
+     * @param chatClient 生成答案的 ChatClient，系统提示词、模型参数不同的客户端不共享缓存
+     * @param vectorStoreName 索引名称
+     * @param variant 流水线变体
+     * @param query 用户查询
+     * @param memoryId 会话 ID
+     * @param cacheable 生成完成后判断答案是否可以写入缓存
+     * @param generator 实际的检索 + 生成流程，只在未命中时调用
+     * @return 流式回答
+     */
+    public Flux<String> answer(ChatClient chatClient, String vectorStoreName, String variant, String query,
+                               String memoryId, BooleanSupplier cacheable, Supplier<Flux<String>> generator) {
+        if (!enabled) {
+            return Flux.defer(generator);
+        }
+        return Mono.fromCallable(() -> lookup(chatClient, vectorStoreName, variant, query, memoryId))
+                .subscribeOn(ragPipelineScheduler)
+                .flatMapMany(lookup -> {
+                    if (!lookup.eligible()) {
+                        counter(variant, "ineligible").increment();
+                        return Flux.defer(generator);
+                    }
+                    if (lookup.answer() != null) {
+                        counter(variant, "hit").increment();
+                        // 回放的问答同样写入对话历史，保证后续多轮对话的上下文完整
+                        if (memoryId != null) {
+                            chatMemory.add(memoryId, List.of(new UserMessage(query), new AssistantMessage(lookup.answer())));
+                        }
+                        return Flux.fromIterable(chunk(lookup.answer()));
+                    }
+                    counter(variant, "miss").increment();
+                    StringBuilder answer = new StringBuilder();
+                    return Flux.defer(generator)
+                            .doOnNext(answer::append)
+                            .doOnComplete(() -> {
+                                if (!cacheable.getAsBoolean()) {
+                                    counter(variant, "degraded").increment();
+                                    return;
+                                }
+                                Mono.fromRunnable(() -> store(lookup, answer.toString()))
+                                        .subscribeOn(ragPipelineScheduler)
+                                        .subscribe();
+                            });
+                });
+    }
+
+    /**
+     * 索引内容变化时递增版本号，该索引所有作用域的旧条目失效
+     */
+    @EventListener
+    public void onVectorStoreWrite(VectorStoreWriteEvent event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().increment(generationKey(event.indexName()));
+            String scopePrefix = cachePrefix + event.indexName() + ":";
+            localGenerations.invalidate(event.indexName());
+            localMirror.invalidateIf(key -> key.startsWith(scopePrefix));
+            log.debug("语义答案缓存已失效 - index: {}", event.indexName());
+        } catch (Exception e) {
+            log.warn("失效语义答案缓存失败 - index: {}, error: {}", event.indexName(), e.getMessage());
+        }
+    }
+
+    private record Lookup(boolean eligible, String scopeKey, String normalizedQuery, float[] embedding, String answer) {
+
+        static Lookup ineligible() {
+            return new Lookup(false, null, null, null, null);
+        }
+    }
+
+    private Lookup lookup(ChatClient chatClient, String vectorStoreName, String variant, String query, String memoryId) {
+        if (memoryId != null && !chatMemory.get(memoryId).isEmpty()) {
+            return Lookup.ineligible();
+        }
+        try {
+            String indexName = IndexNames.normalize(vectorStoreName);
+            String scopeKey = scopeKey(indexName, variant, clientFingerprint(chatClient));
+            String normalizedQuery = QueryTransformationCache.normalize(query);
+            List<CachedAnswer> entries = entries(scopeKey);
+
+            // 文本完全相同时不需要计算向量
+            for (CachedAnswer entry : entries) {
+                if (entry.query().equals(normalizedQuery)) {
+                    return new Lookup(true, scopeKey, normalizedQuery, null, entry.answer());
+                }
+            }
+
+            float[] embedding = normalizeVector(embeddingModel.embed(normalizedQuery));
+            CachedAnswer best = null;
+            double bestSimilarity = -1;
+            for (CachedAnswer entry : entries) {
+                double similarity = dot(embedding, entry.embedding());
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+            if (best != null && bestSimilarity >= similarityThreshold) {
+                log.debug("语义答案缓存命中 - query: {}, cached: {}, similarity: {}", query, best.query(), bestSimilarity);
+                return new Lookup(true, scopeKey, normalizedQuery, embedding, best.answer());
+            }
+            return new Lookup(true, scopeKey, normalizedQuery, embedding, null);
+        } catch (Exception e) {
+            log.warn("读取语义答案缓存失败: {}", e.getMessage());
+            return Lookup.ineligible();
+        }
+    }
+
+    private void store(Lookup lookup, String answer) {
+        if (answer.isBlank() || lookup.embedding() == null) {
+            return;
+        }
+        try {
+            String value = objectMapper.writeValueAsString(new StoredAnswer(lookup.normalizedQuery(),
+                    VectorCodec.encodeHalf(lookup.embedding()), answer));
+            redisTemplate.opsForList().rightPush(lookup.scopeKey(), value);
+            redisTemplate.opsForList().trim(lookup.scopeKey(), -maxEntries, -1);
+            redisTemplate.expire(lookup.scopeKey(), ttl.toSeconds(), TimeUnit.SECONDS);
+            // 追加到本地镜像，不重新读取整个列表；镜像按原有效期过期后再从 Redis 同步其他实例写入的条目
+            CachedAnswer entry = new CachedAnswer(lookup.normalizedQuery(), lookup.embedding(), answer);
+            localMirror.computeIfPresent(lookup.scopeKey(), entries -> {
+                List<CachedAnswer> appended = new ArrayList<>(entries.size() + 1);
+                appended.addAll(entries.subList(Math.max(0, entries.size() + 1 - maxEntries), entries.size()));
+                appended.add(entry);
+                return appended;
+            });
+        } catch (Exception e) {
+            log.warn("写入语义答案缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private List<CachedAnswer> entries(String scopeKey) throws Exception {
+        List<CachedAnswer> cached = localMirror.get(scopeKey);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> values = Optional.ofNullable(redisTemplate.opsForList().range(scopeKey, 0, -1)).orElse(List.of());
+        List<CachedAnswer> entries = new ArrayList<>(values.size());
+        for (String value : values) {
+            try {
+                StoredAnswer stored = objectMapper.readValue(value, StoredAnswer.class);
+                entries.add(new CachedAnswer(stored.query(), VectorCodec.decodeHalf(stored.embedding()), stored.answer()));
+            } catch (Exception e) {
+                // 旧格式（向量为 JSON 数组）的条目跳过，随 TTL 过期
+                log.debug("跳过无法解析的语义答案缓存条目: {}", e.getMessage());
+            }
+        }
+        localMirror.put(scopeKey, entries);
+        return entries;
+    }
+
+    /**
+     * 作用域键中带有索引版本号，版本号变化后旧键不再被访问
+     */
+    private String scopeKey(String indexName, String variant, String clientFingerprint) {
+        String generation = localGenerations.get(indexName);
+        if (generation == null) {
+            generation = Optional.ofNullable(redisTemplate.opsForValue().get(generationKey(indexName))).orElse("0");
+            localGenerations.put(indexName, generation);
+        }
+        return cachePrefix + indexName + ":" + generation + ":" + variant + ":" + clientFingerprint;
+    }
+
+    /**
+     * ChatClient 的指纹：默认的系统提示词、消息、模型参数、Advisor 和工具任一不同，答案就不能互相复用。
+     * 读取不到默认请求配置时退化为实例标识，只在同一个 ChatClient 实例内复用
+     */
+    static String clientFingerprint(ChatClient chatClient) {
+        if (!(chatClient.prompt() instanceof DefaultChatClient.DefaultChatClientRequestSpec spec)) {
+            return "instance-" + Integer.toHexString(System.identityHashCode(chatClient));
+        }
+        ChatOptions options = spec.getChatOptions();
+        String source = String.join("\n",
+                String.valueOf(spec.getSystemText()),
+                String.valueOf(new TreeMap<>(spec.getSystemParams())),
+                String.valueOf(spec.getMessages()),
+                options == null ? "" : options.getModel() + "|" + options.getTemperature() + "|"
+                        + options.getTopP() + "|" + options.getMaxTokens(),
+                String.valueOf(spec.getAdvisors().stream().map(Advisor::getName).toList()),
+                String.valueOf(spec.getToolNames()));
+        return QueryTransformationCache.sha256(source).substring(0, 16);
+    }
+
+    private String generationKey(String indexName) {
+        return cachePrefix + "gen:" + indexName;
+    }
+
+    private List<String> chunk(String answer) {
+        List<String> chunks = new ArrayList<>();
+        int i = 0;
+        while (i < answer.length()) {
+            int end = Math.min(answer.length(), i + replayChunkSize);
+            // 不拆分代理对
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(i, end));
+            i = end;
+        }
+        return chunks;
+    }
+
+    private static float[] normalizeVector(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private Counter counter(String variant, String result) {
+        return Counter.builder("rag.answer.cache.requests")
+                .description("语义答案缓存访问次数")
+                .tag("variant", variant)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
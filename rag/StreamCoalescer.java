@@ -0,0 +1,91 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 流式输出合并
+ * 模型逐 Token 输出时每个 Token 都会成为下游的一帧，高并发下产生大量小写入。
+ * 这里按时间窗口和字符数合并 Token：窗口（默认 20ms）到期或累计字符数达到 maxChars（默认 64）时发送一帧。
+ * windowTimeout 使用公平背压模式，下游未请求时不会无限缓存；下游取消时取消信号直接传递到模型调用
+ */
+@Slf4j
+@Component
+public class StreamCoalescer {
+
+    private final StreamCoalescingProperties properties;
+
+    public StreamCoalescer(StreamCoalescingProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 合并流式输出
+     *
+     * @param tokens 模型输出的 Token 流
+     * @param endpoint 端点名称，用于查找按端点覆盖的配置
+     * @return 合并后的输出流，拼接结果与原始输出一致
+     */
+    public Flux<String> coalesce(Flux<String> tokens, String endpoint) {
+        StreamCoalescingProperties.Endpoint override = properties.getEndpoints().get(endpoint);
+        boolean enabled = override != null && override.getEnabled() != null
+                ? override.getEnabled() : Boolean.TRUE.equals(properties.getEnabled());
+        if (!enabled) {
+            return tokens;
+        }
+        int maxChars = override != null && override.getMaxChars() != null
+                ? override.getMaxChars() : properties.getMaxChars();
+        Duration window = override != null && override.getWindow() != null
+                ? override.getWindow() : properties.getWindow();
+        return coalesce(tokens, maxChars, window);
+    }
+
+    /**
+     * 按字符数和时间窗口合并
+     *
+     * @param tokens Token 流
+     * @param maxChars 一帧最多合并的字符数
+     * @param window 一帧最长等待时间
+     * @return 合并后的输出流
+     */
+    public static Flux<String> coalesce(Flux<String> tokens, int maxChars, Duration window) {
+        if (maxChars <= 1 || window.isZero() || window.isNegative()) {
+            return tokens;
+        }
+        // 每个 Token 至少一个字符，窗口内最多 maxChars 个 Token
+        return tokens
+                .windowTimeout(maxChars, window, true)
+                .concatMap(tokenWindow -> {
+                    int[] chars = {0};
+                    return tokenWindow
+                            .bufferUntil(token -> {
+                                chars[0] += token.length();
+                                if (chars[0] >= maxChars) {
+                                    chars[0] = 0;
+                                    return true;
+                                }
+                                return false;
+                            })
+                            .map(StreamCoalescer::join);
+                });
+    }
+
+    private static String join(List<String> buffer) {
+        if (buffer.size() == 1) {
+            return buffer.get(0);
+        }
+        int length = 0;
+        for (String token : buffer) {
+            length += token.length();
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (String token : buffer) {
+            builder.append(token);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ws16289.daxi.service.impl.ai.rag;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 流式输出合并配置（rag.stream）
+ * 全局默认值可按端点覆盖，端点名称为流水线变体，如 rewrite / multi-query / all-in-one / advance
+ */
+@Data
+public class StreamCoalescingProperties {
+
+    private Boolean enabled = true;
+
+    /**
+     * 一帧最多合并的字符数，达到后立即发送
+     */
+    private Integer maxChars = 64;
+
+    /**
+     * 一帧最长等待时间，到期后发送已合并的内容
+     */
+    private Duration window = Duration.ofMillis(20);
+
+    /**
+     * 按端点覆盖的配置，未设置的字段沿用全局默认值
+     */
+    private Map<String, Endpoint> endpoints = new HashMap<>();
+
+    @Data
+    public static class Endpoint {
+        private Boolean enabled;
+        private Integer maxChars;
+        private Duration window;
+    }
+}
@@ -0,0 +1,59 @@
+package com.ws16289.daxi.util;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * 文档生效时间窗口
+ * 除了便于阅读的 valid_from_date / valid_end_date 字符串外，另写入毫秒时间戳字段，
+ * OpenSearch 动态映射为 long，可在 kNN 检索时作为范围过滤条件下推
+ */
+public final class DocumentValidity {
+
+    /**
+     * 生效起始时间（epoch 毫秒）
+     */
+    public static final String VALID_FROM_TS = "valid_from_ts";
+
+    /**
+     * 生效截止时间（epoch 毫秒）
+     */
+    public static final String VALID_END_TS = "valid_end_ts";
+
+    private DocumentValidity() {
+    }
+
+    /**
+     * 写入生效时间窗口的时间戳元数据
+     *
+     * @param metadata 文档元数据
+     * @param validFrom 生效起始时间
+     * @param validEnd 生效截止时间
+     */
+    public static void putValidityWindow(Map<String, Object> metadata, LocalDateTime validFrom, LocalDateTime validEnd) {
+        metadata.put(VALID_FROM_TS, toEpochMillis(validFrom));
+        metadata.put(VALID_END_TS, toEpochMillis(validEnd));
+    }
+
+    /**
+     * 构建“当前时间处于生效窗口内”的过滤条件：valid_from_ts <= now && valid_end_ts >= now
+     *
+     * @param nowMillis 当前时间（epoch 毫秒）
+     * @return Filter.Expression 过滤表达式
+     */
+    public static Filter.Expression activeAt(long nowMillis) {
+        FilterExpressionBuilder builder = new FilterExpressionBuilder();
+        return builder.and(
+                builder.lte(VALID_FROM_TS, nowMillis),
+                builder.gte(VALID_END_TS, nowMillis)
+        ).build();
+    }
+
+    public static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,44 @@
+package com.ws16289.daxi.util;
+
+/**
+ * OpenSearch 索引名称
+ * 业务层（检索、缓存、指标）与存储层使用同一套规范化规则，保证同一个索引对应同一个键
+ */
+public final class IndexNames {
+
+    private IndexNames() {
+    }
+
+    /**
+     * 规范化 index 名称
+     * 只允许小写字母、数字、连字符和下划线
+     *
+     * @param indexName 原始 index 名称
+     * @return 规范化后的名称
+     */
+    public static String normalize(String indexName) {
+        if (indexName == null || indexName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Index name cannot be null or empty");
+        }
+
+        // 转小写
+        String normalized = indexName.toLowerCase().trim();
+
+        // 替换非法字符
+        normalized = normalized.replaceAll("[^a-z0-9_-]", "-");
+
+        // 确保不以连字符或下划线开头
+        normalized = normalized.replaceAll("^[-_]+", "");
+
+        // 限制长度
+        if (normalized.length() > 255) {
+            normalized = normalized.substring(0, 255);
+        }
+
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("Invalid index name: " + indexName);
+        }
+
+        return normalized;
+    }
+}
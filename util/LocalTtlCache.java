@@ -0,0 +1,100 @@
+package com.ws16289.daxi.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 本地 LRU + TTL 缓存
+ * 超过最大容量时淘汰最久未访问的条目，条目在写入 ttl 之后过期
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LocalTtlCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private record CacheEntry<V>(V value, long expireAtNanos) {
+    }
+
+    public LocalTtlCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        // accessOrder = true，按访问顺序排列，用于 LRU 淘汰
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > LocalTtlCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存值
+     *
+     * @param key 键
+     * @return 缓存值，不存在或已过期时返回 null
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expireAtNanos() > 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * 条目存在且未过期时原地更新其值，不延长过期时间
+     *
+     * @param key 键
+     * @param remapping 根据旧值计算新值
+     */
+    public synchronized void computeIfPresent(K key, UnaryOperator<V> remapping) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.expireAtNanos() > 0) {
+            return;
+        }
+        entries.put(key, new CacheEntry<>(remapping.apply(entry.value()), entry.expireAtNanos()));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 移除所有键满足条件的条目
+     */
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        Iterator<K> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (predicate.test(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
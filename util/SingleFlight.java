@@ -0,0 +1,123 @@
+package com.ws16289.daxi.util;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 并发请求合并
+ * 同一个 key 同时只执行一次计算，计算期间到达的相同请求共享结果；计算完成后 key 立即释放，不缓存结果。
+ * 跟随者最多等待 followerTimeout，执行者卡住时跟随者自行计算，不会无限期占用调用线程
+ *
+ * @param <K> 键类型
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+
+    public static final Duration DEFAULT_FOLLOWER_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration followerTimeout;
+
+    public SingleFlight() {
+        this(DEFAULT_FOLLOWER_TIMEOUT);
+    }
+
+    /**
+     * @param followerTimeout 跟随者等待共享计算的最长时间，超时后自行执行计算
+     */
+    public SingleFlight(Duration followerTimeout) {
+        if (followerTimeout.isNegative() || followerTimeout.isZero()) {
+            throw new IllegalArgumentException("followerTimeout must be positive: " + followerTimeout);
+        }
+        this.followerTimeout = followerTimeout;
+    }
+
+    /**
+     * 执行结果及是否由当前调用实际执行
+     */
+    public record Result<V>(V value, boolean shared) {
+    }
+
+    /**
+     * 阻塞式执行
+     *
+     * @param key 请求键
+     * @param loader 实际计算
+     * @return 计算结果，shared 为 true 表示复用了其他线程正在进行的计算；等待超时后自行计算时为 false
+     */
+    public Result<V> execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return new Result<>(await(existing), true);
+            } catch (TimeoutException e) {
+                // 不替换 inFlight 中的条目，执行者完成后仍会释放 key
+                return new Result<>(loader.get(), false);
+            }
+        }
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return new Result<>(value, false);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 非阻塞执行
+     * 共享的计算独立订阅，任何一个订阅者取消都不会取消其他订阅者正在等待的计算；
+     * 跟随者等待超过 followerTimeout 时改为订阅自己的 loader
+     *
+     * @param key 请求键
+     * @param loader 实际计算
+     * @param onShared 复用其他请求的计算时回调
+     * @return 计算结果
+     */
+    public Mono<V> executeAsync(K key, Supplier<Mono<V>> loader, Runnable onShared) {
+        return Mono.defer(() -> {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                onShared.run();
+                return Mono.fromFuture(existing, true)
+                        .timeout(followerTimeout, Mono.defer(loader));
+            }
+            mine.whenComplete((value, error) -> inFlight.remove(key, mine));
+            Mono.defer(loader).subscribe(
+                    mine::complete,
+                    mine::completeExceptionally,
+                    () -> mine.complete(null));
+            return Mono.fromFuture(mine, true);
+        });
+    }
+
+    private V await(CompletableFuture<V> future) throws TimeoutException {
+        try {
+            return future.get(followerTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ws16289.daxi.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+/**
+ * 向量的紧凑字符串编码，用于在 Redis 等字符串存储中保存 embedding
+ */
+public final class VectorCodec {
+
+    private VectorCodec() {
+    }
+
+    /**
+     * 向量按 little-endian float16 编码后 Base64，体积为 float32 的一半
+     */
+    public static String encodeHalf(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putShort(toHalf(value));
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    public static float[] decodeHalf(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[buffer.remaining() / Short.BYTES];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = fromHalf(buffer.getShort());
+        }
+        return vector;
+    }
+
+    /**
+     * float32 转 IEEE 754 half（就近舍入），embedding 分量通常在 [-1, 1] 内，相对误差约 5e-4
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (((bits >>> 23) & 0xff) == 0xff) {
+            // NaN / Infinity
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // 非规格化数
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        // 舍入进位可能进入指数位，结果仍然正确
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    static float fromHalf(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // 非规格化数：mantissa * 2^-24
+            float value = mantissa / (float) (1 << 24);
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}